@@ -114,7 +114,7 @@ public class AboutActivity extends AppCompatActivity {
 
                 + "What We Store\n"
                 + "- Photos: Saved to your device under Pictures/GalleryOrganizer (MediaStore on Android 10+).\n"
-                + "- Metadata (tags/favorites/dates): Stored locally in app preferences on your device.\n"
+                + "- Metadata (tags/favorites/dates): Stored locally in an app database on your device.\n"
                 + "- PDFs: Saved to Downloads/GalleryOrganizer by default.\n\n"
 
                 + "How Your Data Is Used\n"
@@ -1,4 +1,5 @@
 package com.nader.galleryorganizer;
+import android.text.format.Formatter;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -37,7 +38,9 @@ public class FolderAdapter extends RecyclerView.Adapter<FolderAdapter.ViewHolder
     public void onBindViewHolder(@NonNull ViewHolder h, int position) {
         FolderItem folder = folders.get(position);
         h.folderName.setText(folder.name);
-        h.photoCount.setText(folder.photoCount + " photos");
+        String count = folder.photoCount + " photos";
+        if (folder.totalBytes > 0) count += " · " + Formatter.formatShortFileSize(h.itemView.getContext(), folder.totalBytes);
+        h.photoCount.setText(count);
         try { h.folderIcon.setImageResource(R.drawable.ic_folder); }
         catch (Exception e) { h.folderIcon.setImageResource(android.R.drawable.ic_menu_gallery); }
 
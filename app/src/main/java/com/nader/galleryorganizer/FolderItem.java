@@ -6,6 +6,7 @@ public class FolderItem {
     public String relativePath; // e.g., "Pictures/GalleryOrganizer/MyFolder/"
     public File file; // legacy (pre-Android 10)
     public int photoCount;
+    public long totalBytes;  // scoped only (FolderStats)
     public FolderItem(String name, String relativePath, File file, int photoCount) {
         this.name = name;
         this.relativePath = relativePath;
@@ -0,0 +1,150 @@
+package com.nader.galleryorganizer;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.provider.MediaStore;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Photo count and total bytes per top-level folder under Pictures/GalleryOrganizer/
+// (API 29+), kept for the life of the process. Built once, from MediaLibrary's synced rows on Android 11+
+// or one narrow cursor pass on Android 10; after that only changed image ids are re-read: the ones the
+// app copied/moved/deleted itself (touch) plus whatever MediaChangeTracker saw in the meantime.
+final class FolderStats {
+    static final String BASE_REL = "Pictures/GalleryOrganizer/";
+
+    static final class Entry {
+        int count;
+        long bytes;
+    }
+
+    private static final class Row {
+        final String folder;
+        final long size;
+
+        Row(String folder, long size) {
+            this.folder = folder;
+            this.size = size;
+        }
+    }
+
+    private static final String[] PROJECTION = {
+            MediaStore.Images.Media._ID, MediaStore.Images.Media.RELATIVE_PATH,
+            MediaStore.Images.Media.SIZE };
+
+    private static final HashMap<Long, Row> rows = new HashMap<>();
+    private static final HashMap<String, Entry> folders = new HashMap<>();
+    private static final HashMap<String, String> names = new HashMap<>();
+    private static final Set<Long> touched = new HashSet<>();
+    private static long version = -1; // MediaChangeTracker version the stats reflect; -1 = not built
+
+    // Folder name -> stats (copies), brought up to date first; null before Android 10 or when MediaStore
+    // can't be read. Call off the main thread: the first call reads every row.
+    static synchronized Map<String, Entry> get(Context context) {
+        if (Build.VERSION.SDK_INT < 29) return null;
+        MediaChangeTracker tracker = MediaChangeTracker.getInstance();
+        long now = tracker.version();
+        Set<Long> changed = version < 0 ? null : tracker.changesSince(version);
+        try {
+            if (changed == null) {
+                build(context);
+            } else {
+                changed.addAll(touched);
+                if (!changed.isEmpty()) apply(context.getContentResolver(), changed);
+            }
+        } catch (Exception e) {
+            version = -1;
+            return null;
+        }
+        touched.clear();
+        version = now;
+
+        Map<String, Entry> out = new HashMap<>();
+        for (Map.Entry<String, Entry> e : folders.entrySet()) {
+            Entry copy = new Entry();
+            copy.count = e.getValue().count;
+            copy.bytes = e.getValue().bytes;
+            out.put(e.getKey(), copy);
+        }
+        return out;
+    }
+
+    // Image the app just inserted or deleted; re-read on the next get() even if the observer hasn't fired yet.
+    static synchronized void touch(Uri uri) {
+        try {
+            touched.add(Long.parseLong(uri.getLastPathSegment()));
+        } catch (Exception ignored) {}
+    }
+
+    private static void build(Context context) {
+        rows.clear();
+        folders.clear();
+        names.clear();
+        if (MediaLibrary.sync(context)) {
+            MediaLibrary.Pager library = MediaLibrary.pager(BASE_REL);
+            while (!library.isExhausted()) {
+                for (MediaLibrary.Row r : library.next()) add(r.id, r.relPath, r.size);
+            }
+            return;
+        }
+        try (Cursor c = context.getContentResolver().query(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, PROJECTION,
+                MediaStore.Images.Media.RELATIVE_PATH + " LIKE ?", new String[]{ BASE_REL + "%" }, null)) {
+            while (c != null && c.moveToNext()) add(c.getLong(0), c.getString(1), c.getLong(2));
+        }
+    }
+
+    // Re-reads ids anywhere on the volume, so a row moved out of BASE_REL is dropped rather than missed.
+    private static void apply(ContentResolver resolver, Set<Long> ids) {
+        for (Long id : ids) {
+            Row old = rows.remove(id);
+            if (old == null) continue;
+            Entry e = folders.get(old.folder);
+            e.count--;
+            e.bytes -= old.size;
+            if (e.count == 0) folders.remove(old.folder);
+        }
+        List<String> all = new ArrayList<>();
+        for (Long id : ids) all.add(String.valueOf(id));
+        for (int from = 0; from < all.size(); from += 500) {
+            List<String> chunk = all.subList(from, Math.min(all.size(), from + 500));
+            StringBuilder sel = new StringBuilder(MediaStore.Images.Media._ID + " IN (");
+            for (int i = 0; i < chunk.size(); i++) sel.append(i == 0 ? "?" : ",?");
+            sel.append(')');
+            try (Cursor c = resolver.query(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, PROJECTION,
+                    sel.toString(), chunk.toArray(new String[0]), null)) {
+                while (c != null && c.moveToNext()) add(c.getLong(0), c.getString(1), c.getLong(2));
+            }
+        }
+    }
+
+    private static void add(long id, String relPath, long size) {
+        String folder = topFolder(relPath);
+        if (folder == null) return;
+        String shared = names.get(folder); // one String per folder across rows
+        if (shared == null) names.put(folder, shared = folder);
+        folder = shared;
+        Entry e = folders.get(folder);
+        if (e == null) {
+            e = new Entry();
+            folders.put(folder, e);
+        }
+        rows.put(id, new Row(folder, size));
+        e.count++;
+        e.bytes += size;
+    }
+
+    // "Pictures/GalleryOrganizer/Trips/2024/" -> "Trips"; null for rows outside a folder
+    private static String topFolder(String relPath) {
+        if (relPath == null || !relPath.startsWith(BASE_REL)) return null;
+        int slash = relPath.indexOf('/', BASE_REL.length());
+        return slash > BASE_REL.length() ? relPath.substring(BASE_REL.length(), slash) : null;
+    }
+}
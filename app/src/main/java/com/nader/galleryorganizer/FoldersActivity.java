@@ -34,6 +34,9 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @SuppressWarnings("deprecation")
 public class FoldersActivity extends AppCompatActivity {
@@ -44,6 +47,14 @@ public class FoldersActivity extends AppCompatActivity {
     private FolderAdapter adapter;
     private final List<FolderItem> folders = new ArrayList<>();
     private SharedPreferences prefs;
+    private long mediaVersion = -1; // MediaChangeTracker version the list reflects; -1 = never loaded
+    // folder listings run here one at a time; a newer loadFolders() makes the results of older ones stale
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "FoldersLoader");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicInteger generation = new AtomicInteger();
 
     private boolean isScoped() { return Build.VERSION.SDK_INT >= 29; }
 
@@ -71,7 +82,23 @@ public class FoldersActivity extends AppCompatActivity {
     @Override
     protected void onResume() {
         super.onResume();
-        if (hasMediaPermission()) loadFolders();
+        // skip the rescan when no image changed while away (share sheet, external viewer). Before Android 10
+        // moves are plain file copies MediaStore never hears of, so rescan always: LegacyScanner's mtime
+        // cache keeps that cheap.
+        if (!hasMediaPermission()) return;
+        if (Build.VERSION.SDK_INT < 29) {
+            loadFolders();
+            return;
+        }
+        Set<Long> changed = mediaVersion < 0 ? null : MediaChangeTracker.getInstance().changesSince(mediaVersion);
+        if (changed == null || !changed.isEmpty()) loadFolders();
+    }
+
+    @Override
+    protected void onDestroy() {
+        generation.incrementAndGet();
+        loader.shutdownNow();
+        super.onDestroy();
     }
 
     private boolean hasMediaPermission() {
@@ -104,53 +131,62 @@ public class FoldersActivity extends AppCompatActivity {
     }
 
     private void loadFolders() {
-        folders.clear();
+        mediaVersion = MediaChangeTracker.getInstance().version();
+        final int gen = generation.incrementAndGet();
 
         if (isScoped()) {
-            Map<String, Integer> counts = new LinkedHashMap<>();
-
-            // include user-created empty folders
-            Set<String> stored = new LinkedHashSet<>(FolderStore.get(prefs));
-            for (String n : stored) counts.put(n, 0);
-
-            String[] proj = { MediaStore.Images.Media._ID, MediaStore.Images.Media.RELATIVE_PATH };
-            String sel = MediaStore.Images.Media.RELATIVE_PATH + " LIKE ?";
-            String[] args = new String[]{ BASE_REL + "%" };
-
-            try (Cursor c = getContentResolver().query(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, proj, sel, args, null)) {
-                if (c != null) {
-                    int relIdx = c.getColumnIndexOrThrow(MediaStore.Images.Media.RELATIVE_PATH);
-                    while (c.moveToNext()) {
-                        String rel = c.getString(relIdx);
-                        if (rel == null || !rel.startsWith(BASE_REL)) continue;
-                        String rem = rel.substring(BASE_REL.length());
-                        int slash = rem.indexOf("/");
-                        if (slash <= 0) continue;
-                        String name = rem.substring(0, slash);
-                        counts.put(name, counts.getOrDefault(name, 0) + 1);
-                    }
-                }
-            } catch (SecurityException ignored) {}
-
-            for (Map.Entry<String, Integer> e : counts.entrySet()) {
-                folders.add(new FolderItem(e.getKey(), BASE_REL + e.getKey() + "/", null, e.getValue()));
-            }
+            // counts come from FolderStats (cached, updated per changed row), off the main thread
+            loader.execute(() -> {
+                if (generation.get() != gen) return;
+                Map<String, FolderStats.Entry> stats = FolderStats.get(this);
+                runOnUiThread(() -> {
+                    if (generation.get() == gen && !isDestroyed()) showScopedFolders(stats);
+                });
+            });
         } else {
+            // LegacyScanner lists the folders in parallel and skips the ones whose mtime didn't change
             File base = getAppBaseLegacy();
-            File[] subs = base.listFiles(File::isDirectory);
-            if (subs != null) {
-                for (File f : subs) {
-                    File[] images = f.listFiles(pathname -> {
-                        if (pathname == null || !pathname.isFile()) return false;
-                        String n = pathname.getName().toLowerCase();
-                        return n.endsWith(".jpg") || n.endsWith(".jpeg") || n.endsWith(".png") || n.endsWith(".webp");
-                    });
-                    int count = images != null ? images.length : 0;
-                    folders.add(new FolderItem(f.getName(), null, f, count));
-                }
+            loader.execute(() -> {
+                if (generation.get() != gen) return;
+                List<File> subs = new ArrayList<>();
+                LegacyScanner.Listing root = LegacyScanner.list(this, base);
+                if (root != null) for (String name : root.dirs) subs.add(new File(base, name));
+                List<LegacyScanner.Listing> listings = LegacyScanner.list(this, subs);
+                runOnUiThread(() -> {
+                    if (generation.get() != gen || isDestroyed()) return;
+                    folders.clear();
+                    for (int i = 0; i < subs.size(); i++) {
+                        LegacyScanner.Listing l = listings.get(i);
+                        folders.add(new FolderItem(subs.get(i).getName(), null, subs.get(i), l != null ? l.images.length : 0));
+                    }
+                    showFolders();
+                });
+            });
+        }
+    }
+
+    private void showScopedFolders(Map<String, FolderStats.Entry> stats) {
+        folders.clear();
+        Map<String, FolderStats.Entry> byName = new LinkedHashMap<>();
+
+        // include user-created empty folders
+        Set<String> stored = new LinkedHashSet<>(FolderStore.get(prefs));
+        for (String n : stored) byName.put(n, null);
+        if (stats != null) byName.putAll(stats);
+
+        for (Map.Entry<String, FolderStats.Entry> e : byName.entrySet()) {
+            FolderItem item = new FolderItem(e.getKey(), BASE_REL + e.getKey() + "/", null, 0);
+            FolderStats.Entry s = e.getValue();
+            if (s != null) {
+                item.photoCount = s.count;
+                item.totalBytes = s.bytes;
             }
+            folders.add(item);
         }
+        showFolders();
+    }
 
+    private void showFolders() {
         if (adapter == null) {
             adapter = new FolderAdapter(folders, this::openFolder, this::onFolderLongClick);
             recyclerView.setAdapter(adapter);
@@ -248,9 +284,7 @@ public class FoldersActivity extends AppCompatActivity {
                         File newFolder = new File(folder.file.getParentFile(), name);
                         if (newFolder.exists()) { Toast.makeText(this, "Name used", Toast.LENGTH_SHORT).show(); return; }
                         if (folder.file.renameTo(newFolder)) {
-                            String json = prefs.getString("photos", "[]");
-                            json = json.replace(folder.file.getAbsolutePath(), newFolder.getAbsolutePath());
-                            prefs.edit().putString("photos", json).apply();
+                            PhotoStore.replacePathPrefix(prefs, folder.file.getAbsolutePath(), newFolder.getAbsolutePath());
                             Toast.makeText(this, "Renamed", Toast.LENGTH_SHORT).show();
                         } else Toast.makeText(this, "Failed", Toast.LENGTH_SHORT).show();
                     }
@@ -266,15 +300,18 @@ public class FoldersActivity extends AppCompatActivity {
                 .setPositiveButton("Delete", (d, w) -> {
                     if (isScoped()) {
                         List<Uri> toDelete = listUrisInFolder(folder.name, true);
+                        PhotoStore.Editor edits = PhotoStore.edit(prefs);
                         for (Uri u : toDelete) {
                             try { getContentResolver().delete(u, null, null); } catch (Exception ignored) {}
-                            PhotoStore.removeByExactPath(prefs, u.toString());
+                            FolderStats.touch(u);
+                            edits.removeByExactPath(u.toString());
                         }
+                        edits.apply();
                         FolderStore.remove(prefs, folder.name);
                         Toast.makeText(this, "Deleted", Toast.LENGTH_SHORT).show();
                     } else {
                         deleteRecursive(folder.file);
-                        removeFolderEntriesFromPrefsLegacy(folder.file.getAbsolutePath());
+                        PhotoStore.removeByPrefix(prefs, folder.file.getAbsolutePath());
                         Toast.makeText(this, "Deleted", Toast.LENGTH_SHORT).show();
                     }
                     loadFolders();
@@ -384,6 +421,7 @@ public class FoldersActivity extends AppCompatActivity {
         List<ImageRow> rows = queryImages(sel, args);
         int count = 0;
         ContentResolver cr = getContentResolver();
+        PhotoStore.Editor edits = PhotoStore.edit(prefs);
         for (ImageRow r : rows) {
             try {
                 String srcBase = BASE_REL + srcFolder + "/";
@@ -396,6 +434,7 @@ public class FoldersActivity extends AppCompatActivity {
                 cv.put(MediaStore.Images.Media.RELATIVE_PATH, destRel);
                 Uri out = cr.insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, cv);
                 if (out == null) continue;
+                FolderStats.touch(out);
 
                 try (java.io.InputStream in = cr.openInputStream(r.uri);
                      java.io.OutputStream os = cr.openOutputStream(out, "w")) {
@@ -405,13 +444,15 @@ public class FoldersActivity extends AppCompatActivity {
 
                 if (move) {
                     cr.delete(r.uri, null, null);
-                    PhotoStore.replacePath(prefs, r.uri.toString(), out.toString());
+                    FolderStats.touch(r.uri);
+                    edits.replacePath(r.uri.toString(), out.toString());
                 } else {
-                    PhotoStore.addNew(prefs, out.toString(), "", false);
+                    edits.addNew(out.toString(), "", false);
                 }
                 count++;
             } catch (Exception ignored) {}
         }
+        edits.apply();
         return count;
     }
 
@@ -421,6 +462,7 @@ public class FoldersActivity extends AppCompatActivity {
         List<ImageRow> rows = queryImages(sel, args);
         int count = 0;
         ContentResolver cr = getContentResolver();
+        PhotoStore.Editor edits = PhotoStore.edit(prefs);
         for (ImageRow r : rows) {
             try {
                 String srcBase = BASE_REL + srcFolder + "/";
@@ -433,6 +475,7 @@ public class FoldersActivity extends AppCompatActivity {
                 cv.put(MediaStore.Images.Media.RELATIVE_PATH, destRel);
                 Uri out = cr.insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, cv);
                 if (out == null) continue;
+                FolderStats.touch(out);
 
                 try (java.io.InputStream in = cr.openInputStream(r.uri);
                      java.io.OutputStream os = cr.openOutputStream(out, "w")) {
@@ -441,10 +484,12 @@ public class FoldersActivity extends AppCompatActivity {
                 }
 
                 cr.delete(r.uri, null, null);
-                PhotoStore.replacePath(prefs, r.uri.toString(), out.toString());
+                FolderStats.touch(r.uri);
+                edits.replacePath(r.uri.toString(), out.toString());
                 count++;
             } catch (Exception ignored) {}
         }
+        edits.apply();
         return count;
     }
 
@@ -454,7 +499,9 @@ public class FoldersActivity extends AppCompatActivity {
         File destFolder = new File(destParent, sourceFolder.getName());
         if (destFolder.exists()) destFolder = new File(destParent, sourceFolder.getName() + "_copy_" + System.currentTimeMillis());
         if (copyDirRecursive(sourceFolder, destFolder)) {
-            registerFilesUnderLegacy(destFolder);
+            PhotoStore.Editor edits = PhotoStore.edit(prefs);
+            registerFilesUnderLegacy(destFolder, edits);
+            edits.apply();
             Toast.makeText(this, "Folder copied", Toast.LENGTH_SHORT).show();
         } else {
             Toast.makeText(this, "Copy failed", Toast.LENGTH_SHORT).show();
@@ -465,11 +512,7 @@ public class FoldersActivity extends AppCompatActivity {
         File destFolder = new File(destParent, sourceFolder.getName());
         if (destFolder.exists()) destFolder = new File(destParent, sourceFolder.getName() + "_moved_" + System.currentTimeMillis());
         if (copyDirRecursive(sourceFolder, destFolder)) {
-            String oldBase = sourceFolder.getAbsolutePath();
-            String newBase = destFolder.getAbsolutePath();
-            String json = prefs.getString("photos", "[]");
-            json = json.replace(oldBase, newBase);
-            prefs.edit().putString("photos", json).apply();
+            PhotoStore.replacePathPrefix(prefs, sourceFolder.getAbsolutePath(), destFolder.getAbsolutePath());
             deleteRecursive(sourceFolder);
             Toast.makeText(this, "Folder moved", Toast.LENGTH_SHORT).show();
         } else {
@@ -499,19 +542,12 @@ public class FoldersActivity extends AppCompatActivity {
         } catch (Exception e) { return false; }
     }
 
-    private void registerFilesUnderLegacy(File dir) {
+    private void registerFilesUnderLegacy(File dir, PhotoStore.Editor edits) {
         File[] children = dir.listFiles();
         if (children == null) return;
         for (File f : children) {
-            if (f.isDirectory()) registerFilesUnderLegacy(f);
-            else if (isImageLegacy(f)) {
-                String date = new java.text.SimpleDateFormat("yyyy-MM-dd", java.util.Locale.getDefault()).format(new java.util.Date());
-                String entry = f.getAbsolutePath() + "||" + date + "|" + System.currentTimeMillis() + "|false|";
-                String json = prefs.getString("photos", "[]");
-                if ("[]".equals(json)) json = "[\"" + entry + "\"]";
-                else json = json.substring(0, json.length() - 1) + "," + "\"" + entry + "\"]";
-                prefs.edit().putString("photos", json).apply();
-            }
+            if (f.isDirectory()) registerFilesUnderLegacy(f, edits);
+            else if (isImageLegacy(f)) edits.addNew(f.getAbsolutePath(), "", false);
         }
     }
 
@@ -520,22 +556,6 @@ public class FoldersActivity extends AppCompatActivity {
         return n.endsWith(".jpg") || n.endsWith(".jpeg") || n.endsWith(".png") || n.endsWith(".webp");
     }
 
-    private void removeFolderEntriesFromPrefsLegacy(String basePath) {
-        String json = prefs.getString("photos", "[]");
-        if (json == null || json.length() < 2) return;
-        while (true) {
-            int start = json.indexOf("\"" + basePath);
-            if (start < 0) break;
-            int end = json.indexOf("\"", start + 1);
-            if (end < 0) break;
-            json = json.substring(0, start) + json.substring(end + 1);
-            json = json.replace(",,", ",").replace("[,", "[").replace(",]", "]");
-        }
-        String trimmed = json.replace("[", "").replace("]", "").replace(",", "").trim();
-        if (trimmed.isEmpty()) json = "[]";
-        prefs.edit().putString("photos", json).apply();
-    }
-
     private void deleteRecursive(File file) {
         if (file.isDirectory()) {
             File[] c = file.listFiles();
@@ -584,6 +604,7 @@ public class FoldersActivity extends AppCompatActivity {
         if (images == null) return 0;
 
         int count = 0;
+        PhotoStore.Editor edits = PhotoStore.edit(prefs);
         for (File img : images) {
             try {
                 File dst = new File(destFolder, img.getName());
@@ -594,17 +615,14 @@ public class FoldersActivity extends AppCompatActivity {
                 }
                 MediaScannerConnection.scanFile(this, new String[]{dst.getAbsolutePath()}, null, null);
                 if (deleteSrcAfter) {
-                    if (img.delete()) {
-                        String json = prefs.getString("photos", "[]");
-                        json = json.replace(img.getAbsolutePath(), dst.getAbsolutePath());
-                        prefs.edit().putString("photos", json).apply();
-                    }
+                    if (img.delete()) edits.replacePath(img.getAbsolutePath(), dst.getAbsolutePath());
                 } else {
-                    PhotoStore.addNew(prefs, dst.getAbsolutePath(), "", false);
+                    edits.addNew(dst.getAbsolutePath(), "", false);
                 }
                 count++;
             } catch (Exception ignored) {}
         }
+        edits.apply();
         return count;
     }
 
@@ -613,6 +631,7 @@ public class FoldersActivity extends AppCompatActivity {
         String[] args = new String[]{ BASE_REL + srcFolder + "/" };
         List<ImageRow> rows = queryImages(sel, args);
         ContentResolver cr = getContentResolver();
+        PhotoStore.Editor edits = PhotoStore.edit(prefs);
         int count = 0;
         for (ImageRow r : rows) {
             try {
@@ -622,6 +641,7 @@ public class FoldersActivity extends AppCompatActivity {
                 cv.put(MediaStore.Images.Media.RELATIVE_PATH, BASE_REL + destFolder + "/");
                 Uri out = cr.insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, cv);
                 if (out == null) continue;
+                FolderStats.touch(out);
 
                 try (java.io.InputStream in = cr.openInputStream(r.uri);
                      java.io.OutputStream os = cr.openOutputStream(out, "w")) {
@@ -632,13 +652,15 @@ public class FoldersActivity extends AppCompatActivity {
 
                 if (move) {
                     cr.delete(r.uri, null, null);
-                    PhotoStore.replacePath(prefs, r.uri.toString(), out.toString());
+                    FolderStats.touch(r.uri);
+                    edits.replacePath(r.uri.toString(), out.toString());
                 } else {
-                    PhotoStore.addNew(prefs, out.toString(), "", false);
+                    edits.addNew(out.toString(), "", false);
                 }
                 count++;
             } catch (Exception ignored) {}
         }
+        edits.apply();
         return count;
     }
 
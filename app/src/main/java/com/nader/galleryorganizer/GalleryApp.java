@@ -0,0 +1,12 @@
+package com.nader.galleryorganizer;
+
+import android.app.Application;
+
+public class GalleryApp extends Application {
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        PhotoStore.init(this);
+        MediaChangeTracker.getInstance().start(this);
+    }
+}
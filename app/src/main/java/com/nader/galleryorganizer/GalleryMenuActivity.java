@@ -1,11 +1,21 @@
 package com.nader.galleryorganizer;
 
+import android.app.AlertDialog;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.widget.Button;
+import android.widget.EditText;
+import android.widget.LinearLayout;
+import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
 public class GalleryMenuActivity extends AppCompatActivity {
+    private SharedPreferences prefs;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -17,8 +27,11 @@ public class GalleryMenuActivity extends AppCompatActivity {
             getSupportActionBar().setTitle("Your Gallery");
         }
 
+        prefs = getSharedPreferences("GalleryOrganizerPrefs", MODE_PRIVATE);
+
         Button btnFolders = findViewById(R.id.btnFolders);
         Button btnPhotos = findViewById(R.id.btnPhotos);
+        Button btnAlbums = findViewById(R.id.btnAlbums);
 
         btnFolders.setOnClickListener(v -> {
             Intent intent = new Intent(this, FoldersActivity.class);
@@ -29,6 +42,69 @@ public class GalleryMenuActivity extends AppCompatActivity {
             Intent intent = new Intent(this, PhotosActivity.class);
             startActivity(intent);
         });
+
+        btnAlbums.setOnClickListener(v -> showSmartAlbumsDialog());
+    }
+
+    private void showSmartAlbumsDialog() {
+        TreeMap<String, String> albums = SmartAlbumStore.get(prefs);
+        List<String> items = new ArrayList<>(albums.keySet());
+        int count = items.size();
+        items.add("New Smart Album");
+        if (count > 0) items.add("Delete Smart Album");
+        new AlertDialog.Builder(this)
+                .setTitle("Smart Albums")
+                .setItems(items.toArray(new String[0]), (d, w) -> {
+                    if (w < count) {
+                        String name = items.get(w);
+                        Intent intent = new Intent(this, PhotosActivity.class);
+                        intent.putExtra("folder_name", name);
+                        intent.putExtra("album_query", albums.get(name));
+                        startActivity(intent);
+                    } else if (w == count) {
+                        showCreateAlbumDialog();
+                    } else {
+                        showDeleteAlbumDialog(albums);
+                    }
+                })
+                .setNegativeButton("Cancel", null).show();
+    }
+
+    private void showCreateAlbumDialog() {
+        EditText name = new EditText(this);
+        name.setHint("Album name");
+        name.setSingleLine(true);
+        EditText query = new EditText(this);
+        query.setHint("e.g. tag:invoice fav:true recent:30");
+        query.setSingleLine(true);
+        LinearLayout box = new LinearLayout(this);
+        box.setOrientation(LinearLayout.VERTICAL);
+        box.addView(name);
+        box.addView(query);
+        new AlertDialog.Builder(this)
+                .setTitle("New Smart Album")
+                .setView(box)
+                .setPositiveButton("Save", (d, w) -> {
+                    String n = name.getText().toString().trim();
+                    String q = query.getText().toString().trim();
+                    if (n.isEmpty() || q.isEmpty()) { Toast.makeText(this, "Enter name and query", Toast.LENGTH_SHORT).show(); return; }
+                    SmartAlbumStore.put(prefs, n, q);
+                    Toast.makeText(this, "Saved", Toast.LENGTH_SHORT).show();
+                })
+                .setNegativeButton("Cancel", null).show();
+    }
+
+    private void showDeleteAlbumDialog(TreeMap<String, String> albums) {
+        String[] names = albums.keySet().toArray(new String[0]);
+        new AlertDialog.Builder(this)
+                .setTitle("Delete Smart Album")
+                .setItems(names, (d, w) -> {
+                    String query = albums.remove(names[w]);
+                    SmartAlbumStore.remove(prefs, names[w]);
+                    if (!albums.containsValue(query)) PhotoStore.dropAlbum(query);
+                    Toast.makeText(this, "Deleted", Toast.LENGTH_SHORT).show();
+                })
+                .setNegativeButton("Cancel", null).show();
     }
 
     @Override
@@ -36,4 +112,4 @@ public class GalleryMenuActivity extends AppCompatActivity {
         onBackPressed();
         return true;
     }
-}
\ No newline at end of file
+}
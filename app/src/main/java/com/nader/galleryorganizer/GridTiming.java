@@ -0,0 +1,27 @@
+package com.nader.galleryorganizer;
+
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+// Time to first thumbnail for the gallery grids, in logcat under "GridTiming": from the screen's onCreate
+// to the first frame that draws the grid with photos bound, and whether those came from LibrarySnapshot
+// or the regular load. Compare cold starts with `adb logcat -s GridTiming`. Debug builds only.
+final class GridTiming {
+    private static final String TAG = "GridTiming";
+
+    private GridTiming() {}
+
+    static void logFirstFrame(View grid, String screen, long createdAt, String source) {
+        if (!BuildConfig.DEBUG) return;
+        grid.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override public boolean onPreDraw() {
+                grid.getViewTreeObserver().removeOnPreDrawListener(this);
+                Log.i(TAG, screen + ": first thumbnail frame after " + (SystemClock.uptimeMillis() - createdAt)
+                        + " ms (" + source + ")");
+                return true;
+            }
+        });
+    }
+}
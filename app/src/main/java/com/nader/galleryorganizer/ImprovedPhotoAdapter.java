@@ -18,6 +18,7 @@ import java.io.File;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 public class ImprovedPhotoAdapter extends RecyclerView.Adapter<ImprovedPhotoAdapter.ViewHolder> {
     public interface OnPhotoClickListener { void onPhotoClick(PhotoInfo photo); }
@@ -189,6 +190,18 @@ public class ImprovedPhotoAdapter extends RecyclerView.Adapter<ImprovedPhotoAdap
         notifyDataSetChanged();
     }
 
+    // list grew by count items at from (progressive loading); ignored while another list is shown
+    public void notifyPhotosAppended(List<PhotoInfo> list, int from, int count) {
+        if (list == photos && count > 0) notifyItemRangeInserted(from, count);
+    }
+
+    // Rebinds only the items whose path is in the set.
+    public void notifyPhotosChanged(Set<String> paths) {
+        for (int i = 0; i < photos.size(); i++) {
+            if (paths.contains(photos.get(i).path)) notifyItemChanged(i);
+        }
+    }
+
     public void setSelectedPhotos(List<PhotoInfo> selected) {
         this.selectedPhotos = selected != null ? selected : new ArrayList<PhotoInfo>();
         notifyDataSetChanged();
@@ -0,0 +1,159 @@
+package com.nader.galleryorganizer;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+// Single-pass reader for the old prefs store: a JSON array of "path|tags|date|ts|favorite|" strings.
+// Walks the raw JSON text once and cuts fields out by offset, either in place or from one reused
+// unescape buffer, so no JSONArray, per-entry String[] or regex split is built.
+// Older entries are "path|date|ts|fav".
+class LegacyMetaReader {
+    private static final int MAX_FIELDS = 6; // only the first 5 are read; the 6th absorbs any trailing text
+
+    private final String json;
+    private int pos;
+    private final StringBuilder buf = new StringBuilder(128);
+    // current entry: src[from, to), with field i ending at ends[i]
+    private CharSequence src;
+    private int from, to;
+    private final int[] ends = new int[MAX_FIELDS];
+    private final String today;
+
+    LegacyMetaReader(String json) {
+        this.json = json == null ? "" : json;
+        this.today = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault()).format(new Date());
+        int open = this.json.indexOf('[');
+        pos = open < 0 ? this.json.length() : open + 1;
+    }
+
+    // Next entry with a non-empty path, or null at the end of the array (or on malformed input).
+    PhotoRecord next() {
+        while (true) {
+            if (!readEntry()) return null;
+            PhotoRecord r = toRecord();
+            if (r != null) return r;
+        }
+    }
+
+    // Locates the next string element; plain entries are read in place from json, escaped ones
+    // are unescaped into buf. Non-string elements are skipped.
+    private boolean readEntry() {
+        int n = json.length();
+        while (pos < n) {
+            char c = json.charAt(pos);
+            if (c == ']') return false;
+            if (c != '"') {
+                pos++;
+                continue;
+            }
+            int start = ++pos;
+            while (pos < n) {
+                c = json.charAt(pos);
+                if (c == '"') {
+                    src = json;
+                    from = start;
+                    to = pos++;
+                    return true;
+                }
+                if (c == '\\') return unescape(start);
+                pos++;
+            }
+            return false;
+        }
+        return false;
+    }
+
+    private boolean unescape(int start) {
+        int n = json.length();
+        buf.setLength(0);
+        buf.append(json, start, pos);
+        while (pos < n) {
+            char c = json.charAt(pos++);
+            if (c == '"') {
+                src = buf;
+                from = 0;
+                to = buf.length();
+                return true;
+            }
+            if (c != '\\') {
+                buf.append(c);
+                continue;
+            }
+            if (pos >= n) return false;
+            char e = json.charAt(pos++);
+            switch (e) {
+                case 'b': buf.append('\b'); break;
+                case 'f': buf.append('\f'); break;
+                case 'n': buf.append('\n'); break;
+                case 'r': buf.append('\r'); break;
+                case 't': buf.append('\t'); break;
+                case 'u':
+                    if (pos + 4 > n) return false;
+                    try {
+                        buf.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+                    } catch (NumberFormatException ex) {
+                        return false;
+                    }
+                    pos += 4;
+                    break;
+                default: buf.append(e); break; // \" \\ \/
+            }
+        }
+        return false;
+    }
+
+    // Same field rules as the old PhotoStore.parse(): 5+ fields = current layout, 4 = legacy layout.
+    private PhotoRecord toRecord() {
+        int count = 0;
+        for (int i = from; i < to && count < MAX_FIELDS - 1; i++) {
+            if (src.charAt(i) == '|') ends[count++] = i;
+        }
+        ends[count++] = to;
+        String path = field(0);
+        if (path.isEmpty()) return null;
+
+        String tags = "", date = "";
+        long ts = -1;
+        boolean fav = false;
+        if (count >= 5) {
+            tags = field(1);
+            date = field(2);
+            ts = fieldLong(3);
+            fav = fieldIsTrue(4);
+        } else if (count == 4) {
+            date = field(1);
+            ts = fieldLong(2);
+            fav = fieldIsTrue(3);
+        }
+        return new PhotoRecord(path, tags, date.isEmpty() ? today : date,
+                ts < 0 ? System.currentTimeMillis() : ts, fav);
+    }
+
+    private int start(int i) {
+        return i == 0 ? from : ends[i - 1] + 1;
+    }
+
+    private String field(int i) {
+        return src.subSequence(start(i), ends[i]).toString();
+    }
+
+    private boolean fieldIsTrue(int i) {
+        int start = start(i);
+        return ends[i] - start == 4 && src.charAt(start) == 't' && src.charAt(start + 1) == 'r'
+                && src.charAt(start + 2) == 'u' && src.charAt(start + 3) == 'e';
+    }
+
+    // digits only, like Long.parseLong without the substring; -1 when empty or not a number
+    private long fieldLong(int i) {
+        int start = start(i), end = ends[i];
+        if (start == end || end - start > 18) return -1;
+        long v = 0;
+        for (int k = start; k < end; k++) {
+            char c = src.charAt(k);
+            if (c < '0' || c > '9') return -1;
+            v = v * 10 + (c - '0');
+        }
+        return v;
+    }
+}
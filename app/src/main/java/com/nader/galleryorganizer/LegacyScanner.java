@@ -0,0 +1,203 @@
+package com.nader.galleryorganizer;
+
+import android.content.Context;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Pre-Android 10 file walk of Pictures/GalleryOrganizer/. Directories are listed in parallel on a small
+// pool, and each listing (image names + subdirectory names) is cached by the directory's lastModified,
+// persisted across launches. A directory's mtime changes when entries are added, removed or renamed in it,
+// so an unchanged directory is answered from the cache with one stat instead of a listFiles plus an
+// isDirectory per entry.
+final class LegacyScanner {
+    private static final String FILE = "legacy_dirs.bin";
+    private static final int MAGIC = 0x474F4C44; // "GOLD"
+    private static final int FORMAT = 1;
+    // FAT/sdcardfs keep mtime in whole seconds (or coarser): a listing taken that close to the directory's
+    // mtime may have missed a change in the same tick, so it is listed again next time
+    private static final long MTIME_SLACK = 2000;
+
+    // I/O bound, so a couple of threads help even on one core; capped to stay polite on old devices
+    private static final ForkJoinPool pool = new ForkJoinPool(Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors())));
+
+    static final class Listing {
+        final long modified, listedAt;
+        final String[] images, dirs; // names, sorted
+
+        Listing(long modified, long listedAt, String[] images, String[] dirs) {
+            this.modified = modified;
+            this.listedAt = listedAt;
+            this.images = images;
+            this.dirs = dirs;
+        }
+    }
+
+    private static final Map<String, Listing> cache = new ConcurrentHashMap<>();
+    private static boolean loaded;
+    private static volatile boolean dirty;
+
+    // Every image under root, directory by directory (a directory's own images, then its subdirectories in
+    // name order); rootFiles = false leaves out images lying directly in root.
+    static List<File> images(Context context, File root, boolean rootFiles) {
+        load(context);
+        Set<String> seen = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        List<File> out = pool.invoke(new Walk(root, rootFiles, seen));
+        // forget directories under root that are gone
+        String prefix = root.getPath() + File.separator;
+        for (String path : cache.keySet()) {
+            if (path.startsWith(prefix) && !seen.contains(path)) {
+                cache.remove(path);
+                dirty = true;
+            }
+        }
+        save(context);
+        return out;
+    }
+
+    // Listings of the given directories (null for a missing one), read in parallel.
+    static List<Listing> list(Context context, List<File> dirs) {
+        load(context);
+        List<RecursiveTask<Listing>> tasks = new ArrayList<>();
+        for (File dir : dirs) {
+            tasks.add(new RecursiveTask<Listing>() {
+                @Override protected Listing compute() {
+                    return listing(dir);
+                }
+            });
+        }
+        for (RecursiveTask<Listing> t : tasks) pool.execute(t);
+        List<Listing> out = new ArrayList<>();
+        for (RecursiveTask<Listing> t : tasks) out.add(t.join());
+        save(context);
+        return out;
+    }
+
+    static Listing list(Context context, File dir) {
+        load(context);
+        Listing l = listing(dir);
+        save(context);
+        return l;
+    }
+
+    private static final class Walk extends RecursiveTask<List<File>> {
+        private final File dir;
+        private final boolean files;
+        private final Set<String> seen;
+
+        Walk(File dir, boolean files, Set<String> seen) {
+            this.dir = dir;
+            this.files = files;
+            this.seen = seen;
+        }
+
+        @Override
+        protected List<File> compute() {
+            Listing l = listing(dir);
+            if (l == null) return new ArrayList<>();
+            seen.add(dir.getPath());
+            List<Walk> subs = new ArrayList<>();
+            for (String name : l.dirs) subs.add(new Walk(new File(dir, name), true, seen));
+            invokeAll(subs);
+            List<File> out = new ArrayList<>();
+            if (files) for (String name : l.images) out.add(new File(dir, name));
+            for (Walk w : subs) out.addAll(w.join());
+            return out;
+        }
+    }
+
+    private static Listing listing(File dir) {
+        String path = dir.getPath();
+        long modified = dir.lastModified(); // 0 when missing
+        Listing l = cache.get(path);
+        if (l != null && modified != 0 && l.modified == modified && l.listedAt - modified >= MTIME_SLACK) return l;
+        File[] files = modified == 0 ? null : dir.listFiles();
+        if (files == null) {
+            if (cache.remove(path) != null) dirty = true;
+            return null;
+        }
+        List<String> images = new ArrayList<>(), dirs = new ArrayList<>();
+        for (File f : files) {
+            if (f.isDirectory()) dirs.add(f.getName());
+            else if (isImage(f.getName())) images.add(f.getName());
+        }
+        String[] im = images.toArray(new String[0]), ds = dirs.toArray(new String[0]);
+        Arrays.sort(im);
+        Arrays.sort(ds);
+        l = new Listing(modified, System.currentTimeMillis(), im, ds);
+        cache.put(path, l);
+        dirty = true;
+        return l;
+    }
+
+    private static boolean isImage(String name) {
+        String n = name.toLowerCase();
+        return n.endsWith(".jpg") || n.endsWith(".jpeg") || n.endsWith(".png") || n.endsWith(".webp");
+    }
+
+    private static synchronized void load(Context context) {
+        if (loaded) return;
+        loaded = true;
+        File file = new File(context.getFilesDir(), FILE);
+        if (!file.exists()) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readByte() != FORMAT) return;
+            int n = in.readInt();
+            for (int i = 0; i < n; i++) {
+                String path = in.readUTF();
+                long modified = in.readLong(), listedAt = in.readLong();
+                String[] images = new String[in.readInt()];
+                for (int j = 0; j < images.length; j++) images[j] = in.readUTF();
+                String[] dirs = new String[in.readInt()];
+                for (int j = 0; j < dirs.length; j++) dirs[j] = in.readUTF();
+                cache.put(path, new Listing(modified, listedAt, images, dirs));
+            }
+        } catch (Exception ignored) {
+            // unreadable cache: everything is listed again
+            cache.clear();
+        }
+    }
+
+    // temp file + rename, so a crash mid-write leaves the previous cache
+    private static synchronized void save(Context context) {
+        if (!dirty) return;
+        dirty = false;
+        File file = new File(context.getFilesDir(), FILE);
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeByte(FORMAT);
+            List<Map.Entry<String, Listing>> entries = new ArrayList<>(cache.entrySet());
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Listing> e : entries) {
+                Listing l = e.getValue();
+                out.writeUTF(e.getKey());
+                out.writeLong(l.modified);
+                out.writeLong(l.listedAt);
+                out.writeInt(l.images.length);
+                for (String s : l.images) out.writeUTF(s);
+                out.writeInt(l.dirs.length);
+                for (String s : l.dirs) out.writeUTF(s);
+            }
+        } catch (Exception e) {
+            tmp.delete();
+            dirty = true;
+            return;
+        }
+        if (!tmp.renameTo(file)) tmp.delete();
+    }
+}
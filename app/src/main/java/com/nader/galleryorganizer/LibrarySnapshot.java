@@ -0,0 +1,167 @@
+package com.nader.galleryorganizer;
+
+import android.content.Context;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// The top of a gallery grid as last shown (path, name, folder, favorite, tags, date), written when the
+// screen stops and memory-mapped on the next open so the grid has something to draw before MediaStore
+// and the metadata store have been read. It is only a placeholder: the normal load replaces it.
+//
+// Layout: MAGIC, FORMAT, key, folder names, then per row a kind byte (media id / file path), the id or
+// path, name, folder index, flags, tags, date, DATE_ADDED. Strings are int length + UTF-8.
+final class LibrarySnapshot {
+    static final int MAX_ROWS = 2000; // a few screens; enough to scroll while the real list loads
+
+    private static final int MAGIC = 0x474F534E; // "GOSN"
+    private static final int FORMAT = 1;
+    private static final String MEDIA_PREFIX = "content://media/external/images/media/";
+    private static final byte KIND_MEDIA = 0, KIND_PATH = 1;
+    private static final byte FLAG_FAVORITE = 1;
+
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "LibrarySnapshot-writer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // One photo's fields as of write(), copied on the caller's thread: the PhotoInfos stay live on screen
+    // and are edited in place while the writer serializes.
+    private static final class Row {
+        final String path, name, folder, tags, date;
+        final boolean favorite;
+        final long added;
+
+        Row(PhotoInfo p) {
+            path = p.path;
+            name = p.name;
+            folder = p.folder;
+            tags = p.tags;
+            date = p.date;
+            favorite = p.favorite;
+            added = p.added;
+        }
+    }
+
+    private LibrarySnapshot() {}
+
+    // Rows saved for key, or null when there is none (or it can't be read).
+    static List<PhotoInfo> read(Context context, String key) {
+        File file = file(context, key);
+        if (!file.exists()) return null;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel ch = raf.getChannel()) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (buf.getInt() != MAGIC || buf.get() != FORMAT || !key.equals(string(buf))) return null;
+            String[] folders = new String[buf.getInt()];
+            for (int i = 0; i < folders.length; i++) folders[i] = string(buf);
+            int n = buf.getInt();
+            List<PhotoInfo> out = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                PhotoInfo p = new PhotoInfo();
+                p.path = buf.get() == KIND_MEDIA ? MEDIA_PREFIX + buf.getLong() : string(buf);
+                p.name = string(buf);
+                p.folder = folders[buf.getInt()];
+                p.favorite = (buf.get() & FLAG_FAVORITE) != 0;
+                p.tags = string(buf);
+                p.date = string(buf);
+                p.added = buf.getLong();
+                out.add(p);
+            }
+            return out;
+        } catch (Exception e) {
+            // truncated or from an older build: the screen just loads normally
+            return null;
+        }
+    }
+
+    // Saves the first MAX_ROWS of photos for key in the background; the caller may keep changing its list.
+    static void write(Context context, String key, List<PhotoInfo> photos) {
+        File file = file(context, key);
+        int n = Math.min(photos.size(), MAX_ROWS);
+        Row[] rows = new Row[n];
+        for (int i = 0; i < n; i++) rows[i] = new Row(photos.get(i));
+        writer.execute(() -> {
+            File tmp = new File(file.getPath() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                write(out, key, rows);
+            } catch (Exception e) {
+                tmp.delete();
+                return;
+            }
+            if (!tmp.renameTo(file)) tmp.delete();
+        });
+    }
+
+    private static void write(DataOutputStream out, String key, Row[] rows) throws IOException {
+        HashMap<String, Integer> folderIds = new HashMap<>();
+        List<String> folders = new ArrayList<>();
+        for (Row p : rows) {
+            if (!folderIds.containsKey(p.folder)) {
+                folderIds.put(p.folder, folders.size());
+                folders.add(p.folder);
+            }
+        }
+        out.writeInt(MAGIC);
+        out.writeByte(FORMAT);
+        string(out, key);
+        out.writeInt(folders.size());
+        for (String f : folders) string(out, f);
+        out.writeInt(rows.length);
+        for (Row p : rows) {
+            long id = mediaId(p.path);
+            if (id >= 0) {
+                out.writeByte(KIND_MEDIA);
+                out.writeLong(id);
+            } else {
+                out.writeByte(KIND_PATH);
+                string(out, p.path);
+            }
+            string(out, p.name);
+            out.writeInt(folderIds.get(p.folder));
+            out.writeByte(p.favorite ? FLAG_FAVORITE : 0);
+            string(out, p.tags);
+            string(out, p.date);
+            out.writeLong(p.added);
+        }
+    }
+
+    // id of a content://media/external/images/media/<id> path, else -1
+    private static long mediaId(String path) {
+        if (!path.startsWith(MEDIA_PREFIX)) return -1;
+        try {
+            return Long.parseLong(path.substring(MEDIA_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String string(ByteBuffer buf) {
+        byte[] b = new byte[buf.getInt()];
+        buf.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private static void string(DataOutputStream out, String s) throws IOException {
+        byte[] b = (s == null ? "" : s).getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    private static File file(Context context, String key) {
+        return new File(context.getFilesDir(), "snapshot_" + Integer.toHexString(key.hashCode()) + ".bin");
+    }
+}
@@ -15,6 +15,7 @@ import android.os.Environment;
 import android.provider.MediaStore;
 import android.widget.Button;
 import android.widget.EditText;
+import android.widget.MultiAutoCompleteTextView;
 import android.widget.LinearLayout;
 import android.widget.Switch;
 import android.widget.Toast;
@@ -310,8 +311,7 @@ public class MainActivity extends AppCompatActivity {
     private void showAddTagsDialog(String photoPath) {
         AlertDialog.Builder builder = new AlertDialog.Builder(this);
         builder.setTitle("Add Tags");
-        final EditText et = new EditText(this);
-        et.setHint("comma,separated,tags");
+        final MultiAutoCompleteTextView et = TagSuggestAdapter.newTagField(this, prefs);
         builder.setView(et);
         builder.setPositiveButton("Save", (d, w) -> {
             String tags = et.getText().toString().trim();
@@ -0,0 +1,78 @@
+package com.nader.galleryorganizer;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.MediaStore;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+// Records which MediaStore images changed while the app runs, so screens coming back to the foreground
+// re-fetch only those rows instead of rescanning. Every change gets a version number; a screen remembers
+// the version it loaded at and asks for the image ids changed since. Changes that don't name a row, or
+// more than the log holds, make changesSince() return null: reload everything.
+public final class MediaChangeTracker {
+    private static final int MAX_LOG = 512;
+
+    private static final MediaChangeTracker INSTANCE = new MediaChangeTracker();
+
+    private final ArrayDeque<long[]> log = new ArrayDeque<>(); // {version, image id}, oldest first
+    private long version;
+    private long unknownAt;   // last version with a change that named no row
+    private long droppedUpTo; // versions up to here fell out of the log
+    private boolean started;
+
+    private MediaChangeTracker() {}
+
+    public static MediaChangeTracker getInstance() {
+        return INSTANCE;
+    }
+
+    // Registers the observer once per process (GalleryApp).
+    public synchronized void start(Context context) {
+        if (started) return;
+        started = true;
+        ContentObserver observer = new ContentObserver(new Handler(Looper.getMainLooper())) {
+            @Override public void onChange(boolean selfChange, Collection<Uri> uris, int flags) {
+                for (Uri u : uris) record(u);
+            }
+
+            @Override public void onChange(boolean selfChange, Uri uri) {
+                record(uri);
+            }
+        };
+        context.getApplicationContext().getContentResolver()
+                .registerContentObserver(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, true, observer);
+    }
+
+    public synchronized long version() {
+        return version;
+    }
+
+    // Image ids changed after version since; null when a full reload is needed.
+    public synchronized Set<Long> changesSince(long since) {
+        if (unknownAt > since || droppedUpTo > since) return null;
+        Set<Long> out = new HashSet<>();
+        for (long[] e : log) if (e[0] > since) out.add(e[1]);
+        return out;
+    }
+
+    private synchronized void record(Uri uri) {
+        version++;
+        long id = -1;
+        try {
+            if (uri != null) id = Long.parseLong(uri.getLastPathSegment());
+        } catch (Exception ignored) {}
+        if (id < 0) {
+            unknownAt = version;
+            return;
+        }
+        log.addLast(new long[]{version, id});
+        if (log.size() > MAX_LOG) droppedUpTo = log.removeFirst()[0];
+    }
+}
@@ -0,0 +1,330 @@
+package com.nader.galleryorganizer;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.provider.MediaStore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Android 11+: a persisted copy of the app's MediaStore rows (everything under Pictures/GalleryOrganizer/
+// on the primary volume) plus the sync cursor it reflects (volume version + generation). A sync only
+// queries rows whose GENERATION_MODIFIED is past the cursor, so a cold open after a small change reads a
+// few rows. Deletions don't show up in a generation query: within a process MediaChangeTracker names the
+// changed ids and only those are re-checked; the first sync of a process, or a change the tracker couldn't
+// name, takes one id-only pass. A new volume version (media database rebuilt) falls back to one full scan.
+final class MediaLibrary {
+    static final String BASE_REL = "Pictures/GalleryOrganizer/";
+
+    private static final String FILE = "media_library.bin";
+    private static final int MAGIC = 0x474F4D4C; // "GOML"
+    private static final int FORMAT = 2;
+
+    static final class Row {
+        final long id;
+        final String name;
+        final String relPath;
+        final long added;
+        final String mime;
+        final long size;
+        final int width, height;
+        final long taken;
+
+        Row(long id, String name, String relPath, long added, String mime, long size, int width, int height, long taken) {
+            this.id = id;
+            this.name = name;
+            this.relPath = relPath;
+            this.added = added;
+            this.mime = mime;
+            this.size = size;
+            this.width = width;
+            this.height = height;
+            this.taken = taken;
+        }
+    }
+
+    // Rows under relPrefix, newest first by (DATE_ADDED, _ID), from a sorted snapshot of the cache: a page
+    // at a time, so a screen only turns the rows it shows into PhotoInfos.
+    static final class Pager {
+        private final Row[] sorted;
+        private final String relPrefix;
+        private int next;
+
+        private Pager(Row[] sorted, String relPrefix) {
+            this.sorted = sorted;
+            this.relPrefix = relPrefix;
+            skip();
+        }
+
+        boolean isExhausted() {
+            return next >= sorted.length;
+        }
+
+        // up to MediaPager.PAGE_SIZE more rows
+        List<Row> next() {
+            List<Row> out = new ArrayList<>();
+            while (next < sorted.length && out.size() < MediaPager.PAGE_SIZE) {
+                out.add(sorted[next++]);
+                skip();
+            }
+            return out;
+        }
+
+        private void skip() {
+            while (next < sorted.length && !sorted[next].relPath.startsWith(relPrefix)) next++;
+        }
+    }
+
+    private static final HashMap<Long, Row> rows = new HashMap<>();
+    private static Row[] newestFirst; // rows sorted for Pager; null after a change until the next pager()
+    // copy of rows for names(), swapped in after each change: read without the class lock, which a sync
+    // holds through its queries
+    private static volatile Map<Long, Row> published = Collections.emptyMap();
+    private static String volumeVersion;
+    private static long generation = -1;
+    private static long reconciled = -1; // MediaChangeTracker version deletions are checked up to; -1 = not yet
+    private static boolean loaded;
+
+    // Brings the cache up to date; false before Android 11 or when MediaStore can't be read, so callers
+    // fall back to querying.
+    static synchronized boolean sync(Context context) {
+        if (Build.VERSION.SDK_INT < 30) return false;
+        File file = new File(context.getFilesDir(), FILE);
+        if (!loaded) {
+            read(file);
+            loaded = true;
+            publish();
+        }
+        ContentResolver resolver = context.getContentResolver();
+        String volume = MediaStore.VOLUME_EXTERNAL_PRIMARY;
+        Uri collection = MediaStore.Images.Media.getContentUri(volume);
+        try {
+            String version = MediaStore.getVersion(context, volume);
+            // read the generation and tracker version first: anything changing during the queries below is
+            // seen next time
+            long gen = MediaStore.getGeneration(context, volume);
+            long tracked = MediaChangeTracker.getInstance().version();
+            boolean dirty;
+            if (!version.equals(volumeVersion) || gen < generation) {
+                fullScan(resolver, collection);
+                dirty = true;
+            } else {
+                dirty = gen != generation && applyDelta(resolver, collection, generation);
+                dirty |= dropDeleted(resolver, collection);
+            }
+            reconciled = tracked;
+            if (dirty) {
+                newestFirst = null;
+                publish();
+            }
+            if (dirty || gen != generation) {
+                volumeVersion = version;
+                generation = gen;
+                write(file);
+            }
+        } catch (Exception e) {
+            return false;
+        }
+        return true;
+    }
+
+    // Pages through the rows under relPrefix (within BASE_REL) as of the last sync.
+    static synchronized Pager pager(String relPrefix) {
+        if (newestFirst == null) {
+            Row[] sorted = rows.values().toArray(new Row[0]);
+            Arrays.sort(sorted, (a, b) -> a.added != b.added ? Long.compare(b.added, a.added)
+                    : Long.compare(b.id, a.id));
+            newestFirst = sorted;
+        }
+        return new Pager(newestFirst, relPrefix);
+    }
+
+    // Before a smart album is read: rows current enough for names(). Android 10 has no generations to sync
+    // by, so there the app's rows are listed once per call and kept in memory only.
+    static synchronized void refreshNames(Context context) {
+        if (Build.VERSION.SDK_INT >= 30) {
+            sync(context);
+        } else if (Build.VERSION.SDK_INT >= 29) {
+            try {
+                fullScan(context.getContentResolver(), MediaStore.Images.Media.EXTERNAL_CONTENT_URI);
+            } catch (Exception ignored) {}
+            newestFirst = null;
+            publish();
+        }
+    }
+
+    // PhotoQuery.MediaNames over the cached rows: {DISPLAY_NAME, folder name} of a content URI, or null for
+    // an id the last sync didn't see.
+    // Doesn't block on a running sync; callers hold the PhotoStore lock.
+    static String[] names(String uri) {
+        Row r;
+        try {
+            r = published.get(Long.parseLong(uri.substring(uri.lastIndexOf('/') + 1)));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return r == null ? null : new String[]{ r.name, lastSegment(r.relPath) };
+    }
+
+    private static void publish() {
+        published = new HashMap<>(rows);
+    }
+
+    static PhotoInfo toPhoto(Row r, Map<String, PhotoRecord> meta, PhotoTable table) {
+        table.put(r.id, r.name, r.relPath, r.mime, r.size, r.width, r.height, r.taken);
+        PhotoInfo p = new PhotoInfo();
+        p.path = ContentUris.withAppendedId(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, r.id).toString();
+        p.name = r.name;
+        p.folder = lastSegment(r.relPath);
+        p.added = r.added;
+        PhotoRecord m = meta.get(p.path);
+        if (m != null) {
+            p.tags = m.tags;
+            p.date = m.date;
+            p.favorite = m.favorite;
+        }
+        return p;
+    }
+
+    private static final String[] PROJECTION = {
+            MediaStore.Images.Media._ID, MediaStore.Images.Media.DISPLAY_NAME,
+            MediaStore.Images.Media.RELATIVE_PATH, MediaStore.Images.Media.DATE_ADDED,
+            MediaStore.Images.Media.MIME_TYPE, MediaStore.Images.Media.SIZE, MediaStore.Images.Media.WIDTH,
+            MediaStore.Images.Media.HEIGHT, MediaStore.Images.Media.DATE_TAKEN };
+
+    private static void fullScan(ContentResolver resolver, Uri collection) {
+        rows.clear();
+        try (Cursor c = resolver.query(collection, PROJECTION, MediaStore.Images.Media.RELATIVE_PATH + " LIKE ?",
+                new String[]{ BASE_REL + "%" }, null)) {
+            while (c != null && c.moveToNext()) put(c);
+        }
+    }
+
+    // Rows modified after since, anywhere on the volume: a row moved out of BASE_REL has to be seen too.
+    private static boolean applyDelta(ContentResolver resolver, Uri collection, long since) {
+        boolean changed = false;
+        try (Cursor c = resolver.query(collection, PROJECTION, MediaStore.Images.Media.GENERATION_MODIFIED + " > ?",
+                new String[]{ String.valueOf(since) }, null)) {
+            while (c != null && c.moveToNext()) {
+                String rel = c.getString(2);
+                if (rel != null && rel.startsWith(BASE_REL)) {
+                    put(c);
+                    changed = true;
+                } else if (rows.remove(c.getLong(0)) != null) {
+                    changed = true;
+                }
+            }
+        }
+        return changed;
+    }
+
+    // Drops cached rows that were deleted. Only the cached ids MediaChangeTracker saw change since the last
+    // sync are looked up; without that (first sync of the process, unnamed changes) every id under BASE_REL
+    // is listed once, and compared by count before pruning.
+    private static boolean dropDeleted(ContentResolver resolver, Uri collection) {
+        Set<Long> changed = reconciled < 0 ? null : MediaChangeTracker.getInstance().changesSince(reconciled);
+        if (changed == null) {
+            try (Cursor c = resolver.query(collection, new String[]{ MediaStore.Images.Media._ID },
+                    MediaStore.Images.Media.RELATIVE_PATH + " LIKE ?", new String[]{ BASE_REL + "%" }, null)) {
+                if (c == null || c.getCount() == rows.size()) return false;
+                Set<Long> live = new HashSet<>();
+                while (c.moveToNext()) live.add(c.getLong(0));
+                return rows.keySet().retainAll(live);
+            }
+        }
+        List<String> ids = new ArrayList<>();
+        for (Long id : changed) if (rows.containsKey(id)) ids.add(String.valueOf(id));
+        boolean dropped = false;
+        for (int from = 0; from < ids.size(); from += 500) {
+            List<String> chunk = ids.subList(from, Math.min(ids.size(), from + 500));
+            StringBuilder sel = new StringBuilder(MediaStore.Images.Media._ID + " IN (");
+            for (int i = 0; i < chunk.size(); i++) sel.append(i == 0 ? "?" : ",?");
+            sel.append(')');
+            Set<String> gone = new HashSet<>(chunk);
+            try (Cursor c = resolver.query(collection, new String[]{ MediaStore.Images.Media._ID }, sel.toString(),
+                    chunk.toArray(new String[0]), null)) {
+                while (c != null && c.moveToNext()) gone.remove(String.valueOf(c.getLong(0)));
+            }
+            for (String id : gone) dropped |= rows.remove(Long.parseLong(id)) != null;
+        }
+        return dropped;
+    }
+
+    private static void put(Cursor c) {
+        String name = c.getString(1), rel = c.getString(2), mime = c.getString(4);
+        rows.put(c.getLong(0), new Row(c.getLong(0), name == null ? "" : name, rel == null ? "" : rel, c.getLong(3),
+                mime == null ? "" : mime, c.getLong(5), c.getInt(6), c.getInt(7), c.getLong(8)));
+    }
+
+    private static void read(File file) {
+        if (!file.exists()) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readByte() != FORMAT) return;
+            String version = in.readUTF();
+            long gen = in.readLong();
+            int n = in.readInt();
+            HashMap<Long, Row> read = new HashMap<>(n * 2);
+            for (int i = 0; i < n; i++) {
+                Row r = new Row(in.readLong(), in.readUTF(), in.readUTF(), in.readLong(),
+                        in.readUTF(), in.readLong(), in.readInt(), in.readInt(), in.readLong());
+                read.put(r.id, r);
+            }
+            rows.putAll(read);
+            volumeVersion = version;
+            generation = gen;
+        } catch (Exception ignored) {
+            // unreadable cache: the next sync does a full scan
+        }
+    }
+
+    // temp file + rename, so a crash mid-write leaves the previous cache
+    private static void write(File file) {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeByte(FORMAT);
+            out.writeUTF(volumeVersion);
+            out.writeLong(generation);
+            out.writeInt(rows.size());
+            for (Row r : rows.values()) {
+                out.writeLong(r.id);
+                out.writeUTF(r.name);
+                out.writeUTF(r.relPath);
+                out.writeLong(r.added);
+                out.writeUTF(r.mime);
+                out.writeLong(r.size);
+                out.writeInt(r.width);
+                out.writeInt(r.height);
+                out.writeLong(r.taken);
+            }
+        } catch (Exception e) {
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(file)) tmp.delete();
+    }
+
+    // "Pictures/GalleryOrganizer/Trips/2024/" -> "2024"
+    private static String lastSegment(String relPath) {
+        if (relPath == null) return "";
+        String r = relPath.endsWith("/") ? relPath.substring(0, relPath.length() - 1) : relPath;
+        return r.substring(r.lastIndexOf('/') + 1);
+    }
+}
@@ -0,0 +1,122 @@
+package com.nader.galleryorganizer;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.provider.MediaStore;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+// Keyset-paged MediaStore reader (API 29+): images under a RELATIVE_PATH prefix, newest first by
+// (DATE_ADDED, _ID). Each page asks for the rows after the last one seen, so a page costs the same at any
+// depth and nothing beyond the pages actually read is held in memory.
+class MediaPager {
+    static final int PAGE_SIZE = 200;
+
+    // everything details and copy/move need comes along with the listing (see PhotoTable)
+    private static final String[] PROJECTION = {
+            MediaStore.Images.Media._ID, MediaStore.Images.Media.DISPLAY_NAME,
+            MediaStore.Images.Media.RELATIVE_PATH, MediaStore.Images.Media.DATE_ADDED,
+            MediaStore.Images.Media.MIME_TYPE, MediaStore.Images.Media.SIZE, MediaStore.Images.Media.WIDTH,
+            MediaStore.Images.Media.HEIGHT, MediaStore.Images.Media.DATE_TAKEN };
+
+    private final ContentResolver resolver;
+    private final String relPrefix;
+    private long lastAdded = Long.MAX_VALUE, lastId = Long.MAX_VALUE; // keyset: last row handed out
+    private boolean exhausted;
+
+    MediaPager(ContentResolver resolver, String relPrefix) {
+        this.resolver = resolver;
+        this.relPrefix = relPrefix;
+    }
+
+    boolean isExhausted() {
+        return exhausted;
+    }
+
+    // Current rows for the given image ids that are still under relPrefix (MediaChangeTracker refresh);
+    // ids missing from the result were deleted or moved away.
+    static List<PhotoInfo> fetch(ContentResolver resolver, String relPrefix, Collection<Long> ids,
+                                 Map<String, PhotoRecord> meta, PhotoTable table) {
+        List<PhotoInfo> out = new ArrayList<>();
+        List<String> all = new ArrayList<>();
+        for (Long id : ids) all.add(String.valueOf(id));
+        for (int from = 0; from < all.size(); from += 500) {
+            List<String> chunk = all.subList(from, Math.min(all.size(), from + 500));
+            StringBuilder sel = new StringBuilder(MediaStore.Images.Media.RELATIVE_PATH + " LIKE ? AND "
+                    + MediaStore.Images.Media._ID + " IN (");
+            for (int i = 0; i < chunk.size(); i++) sel.append(i == 0 ? "?" : ",?");
+            sel.append(')');
+            List<String> args = new ArrayList<>();
+            args.add(relPrefix + "%");
+            args.addAll(chunk);
+            try (Cursor c = resolver.query(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, PROJECTION,
+                    sel.toString(), args.toArray(new String[0]), null)) {
+                while (c != null && c.moveToNext()) out.add(toPhoto(c, meta, table));
+            }
+        }
+        return out;
+    }
+
+    // Reads the next page into sink, with tags/date/favorite from meta and the rest into table; returns the rows read.
+    int next(Map<String, PhotoRecord> meta, PhotoLoader.Sink sink, PhotoTable table) {
+        if (exhausted) return 0;
+        String sel = MediaStore.Images.Media.RELATIVE_PATH + " LIKE ? AND ("
+                + MediaStore.Images.Media.DATE_ADDED + " < ? OR ("
+                + MediaStore.Images.Media.DATE_ADDED + " = ? AND " + MediaStore.Images.Media._ID + " < ?))";
+        Bundle args = new Bundle();
+        args.putString(ContentResolver.QUERY_ARG_SQL_SELECTION, sel);
+        args.putStringArray(ContentResolver.QUERY_ARG_SQL_SELECTION_ARGS, new String[]{
+                relPrefix + "%", String.valueOf(lastAdded), String.valueOf(lastAdded), String.valueOf(lastId) });
+        args.putString(ContentResolver.QUERY_ARG_SQL_SORT_ORDER, MediaStore.Images.Media.DATE_ADDED + " DESC, "
+                + MediaStore.Images.Media._ID + " DESC");
+        args.putInt(ContentResolver.QUERY_ARG_LIMIT, PAGE_SIZE);
+
+        int read = 0;
+        try (Cursor c = resolver.query(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, PROJECTION, args, null)) {
+            if (c != null) {
+                // providers that ignore the limit still only get PAGE_SIZE rows read
+                while (read < PAGE_SIZE && c.moveToNext() && !sink.isCancelled()) {
+                    sink.add(toPhoto(c, meta, table));
+                    lastAdded = c.getLong(3);
+                    lastId = c.getLong(0);
+                    read++;
+                }
+            }
+        }
+        if (read < PAGE_SIZE) exhausted = true;
+        return read;
+    }
+
+    private static PhotoInfo toPhoto(Cursor c, Map<String, PhotoRecord> meta, PhotoTable table) {
+        table.put(c.getLong(0), c.getString(1), c.getString(2), c.getString(4), c.getLong(5), c.getInt(6),
+                c.getInt(7), c.getLong(8));
+        Uri u = ContentUris.withAppendedId(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, c.getLong(0));
+        PhotoInfo p = new PhotoInfo();
+        p.path = u.toString();
+        p.name = safe(c.getString(1));
+        p.folder = lastSegment(c.getString(2));
+        p.added = c.getLong(3);
+        PhotoRecord m = meta.get(p.path);
+        if (m != null) {
+            p.tags = m.tags;
+            p.date = m.date;
+            p.favorite = m.favorite;
+        }
+        return p;
+    }
+
+    // "Pictures/GalleryOrganizer/Trips/2024/" -> "2024"
+    private static String lastSegment(String relPath) {
+        if (relPath == null) return "";
+        String r = relPath.endsWith("/") ? relPath.substring(0, relPath.length() - 1) : relPath;
+        return r.substring(r.lastIndexOf('/') + 1);
+    }
+
+    private static String safe(String s) { return s == null ? "" : s; }
+}
@@ -0,0 +1,114 @@
+package com.nader.galleryorganizer;
+
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Read side of PhotoStore shared by every screen: one immutable path -> record snapshot per process.
+// Writes through PhotoStore swap in a snapshot patched with just the changed records and tell listeners
+// (on the main thread) which paths changed. Patches sit on top of the last full copy and are folded into a
+// new one only after MAX_PATCHED paths, so a single edit doesn't copy the library.
+public final class MetadataRepository {
+    public interface Listener {
+        void onMetadataChanged(Set<String> paths);
+    }
+
+    private static final MetadataRepository INSTANCE = new MetadataRepository();
+    private static final int MAX_PATCHED = 256;
+
+    private volatile Map<String, PhotoRecord> snapshot; // null = not built yet
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Handler main = new Handler(Looper.getMainLooper());
+
+    private MetadataRepository() {}
+
+    public static MetadataRepository getInstance() {
+        return INSTANCE;
+    }
+
+    // Unmodifiable; safe to hold and read from any thread.
+    public Map<String, PhotoRecord> snapshot(SharedPreferences prefs) {
+        Map<String, PhotoRecord> s = snapshot;
+        if (s != null) return s;
+        // same lock as PhotoStore writes, so a rebuilt snapshot can't miss a concurrent change
+        synchronized (PhotoStore.class) {
+            if (snapshot == null) snapshot = Collections.unmodifiableMap(PhotoStore.loadAll(prefs));
+            return snapshot;
+        }
+    }
+
+    public PhotoRecord get(SharedPreferences prefs, String path) {
+        return path == null ? null : snapshot(prefs).get(path);
+    }
+
+    public void addListener(Listener l) {
+        if (l != null) listeners.addIfAbsent(l);
+    }
+
+    public void removeListener(Listener l) {
+        listeners.remove(l);
+    }
+
+    // Called by PhotoStore under its lock after a write (or batch of writes): the new record of every
+    // changed path, null for a removed one.
+    void onStoreChanged(Map<String, PhotoRecord> records) {
+        Map<String, PhotoRecord> s = snapshot;
+        if (s != null) snapshot = Patched.of(s, records);
+        if (listeners.isEmpty()) return;
+        final Set<String> changed = Collections.unmodifiableSet(records.keySet());
+        main.post(() -> {
+            for (Listener l : listeners) l.onMetadataChanged(changed);
+        });
+    }
+
+    // A full copy plus the records changed since (null = removed). Lookups check the patch first; iterating
+    // merges the two.
+    private static final class Patched extends AbstractMap<String, PhotoRecord> {
+        private final Map<String, PhotoRecord> base;
+        private final HashMap<String, PhotoRecord> patch;
+        private volatile Set<Entry<String, PhotoRecord>> entries; // built on first iteration
+
+        private Patched(Map<String, PhotoRecord> base, HashMap<String, PhotoRecord> patch) {
+            this.base = base;
+            this.patch = patch;
+        }
+
+        static Map<String, PhotoRecord> of(Map<String, PhotoRecord> s, Map<String, PhotoRecord> records) {
+            Map<String, PhotoRecord> base = s instanceof Patched ? ((Patched) s).base : s;
+            HashMap<String, PhotoRecord> patch = s instanceof Patched
+                    ? new HashMap<>(((Patched) s).patch) : new HashMap<>();
+            patch.putAll(records);
+            return patch.size() <= MAX_PATCHED ? new Patched(base, patch) : merge(base, patch);
+        }
+
+        private static Map<String, PhotoRecord> merge(Map<String, PhotoRecord> base, Map<String, PhotoRecord> patch) {
+            HashMap<String, PhotoRecord> full = new HashMap<>(base);
+            for (Map.Entry<String, PhotoRecord> e : patch.entrySet()) {
+                if (e.getValue() == null) full.remove(e.getKey());
+                else full.put(e.getKey(), e.getValue());
+            }
+            return Collections.unmodifiableMap(full);
+        }
+
+        @Override public PhotoRecord get(Object key) {
+            return patch.containsKey(key) ? patch.get(key) : base.get(key);
+        }
+
+        @Override public boolean containsKey(Object key) {
+            return patch.containsKey(key) ? patch.get(key) != null : base.containsKey(key);
+        }
+
+        @Override public Set<Entry<String, PhotoRecord>> entrySet() {
+            Set<Entry<String, PhotoRecord>> e = entries;
+            if (e == null) entries = e = merge(base, patch).entrySet();
+            return e;
+        }
+    }
+}
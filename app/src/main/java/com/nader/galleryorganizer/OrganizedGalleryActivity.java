@@ -2,7 +2,6 @@ package com.nader.galleryorganizer;
 
 import android.app.AlertDialog;
 import android.content.ContentResolver;
-import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Intent;
 import android.content.SharedPreferences;
@@ -15,6 +14,7 @@ import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Environment;
+import android.os.SystemClock;
 import android.provider.MediaStore;
 import android.widget.EditText;
 import android.widget.SearchView;
@@ -25,14 +25,16 @@ import androidx.core.content.FileProvider;
 import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
-import org.json.JSONArray;
-
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.BitSet;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 public class OrganizedGalleryActivity extends AppCompatActivity {
     private static final String BASE_REL = "Pictures/GalleryOrganizer/";
@@ -42,8 +44,14 @@ public class OrganizedGalleryActivity extends AppCompatActivity {
     private ImprovedPhotoAdapter adapter;
     private final List<PhotoInfo> allPhotos = new ArrayList<>();
     private final List<PhotoInfo> selectedPhotos = new ArrayList<>();
+    private final MetadataRepository.Listener metaListener = this::onMetadataChanged;
     private SharedPreferences prefs;
     private SearchView searchView;
+    private SearchController search;
+    private PhotoLoader loader;
+    private PhotoTable table = new PhotoTable(); // MediaStore columns of the loaded photos
+    private List<PhotoInfo> reconciling; // fresh rows collected while a LibrarySnapshot is on screen
+    private long createdAt;              // onCreate uptime, for GridTiming; 0 once logged
 
     private boolean isContentUri(String path) { return path != null && path.startsWith("content://"); }
 
@@ -55,6 +63,7 @@ public class OrganizedGalleryActivity extends AppCompatActivity {
 
     @Override protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        createdAt = SystemClock.uptimeMillis();
         setContentView(R.layout.activity_organized_gallery);
 
         if (getSupportActionBar() != null) {
@@ -71,107 +80,213 @@ public class OrganizedGalleryActivity extends AppCompatActivity {
 
         recyclerView.setLayoutManager(new GridLayoutManager(this, 3));
 
+        search = new SearchController(this::matchPhotos, (q, results) -> {
+            if (adapter != null) adapter.updatePhotos(results);
+        });
+
         searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
-            @Override public boolean onQueryTextSubmit(String q) { searchPhotos(q); return true; }
-            @Override public boolean onQueryTextChange(String t) { if (t.isEmpty()) loadPhotos(); else searchPhotos(t); return true; }
+            @Override public boolean onQueryTextSubmit(String q) { loader.requestAll(); search.submit(q); return true; }
+            @Override public boolean onQueryTextChange(String t) {
+                if (!t.isEmpty()) {
+                    loader.requestAll();
+                    search.submit(t);
+                } else {
+                    search.cancel();
+                    if (adapter != null) adapter.updatePhotos(allPhotos);
+                }
+                return true;
+            }
         });
 
+        loader = new PhotoLoader(this::onPhotosLoaded);
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override public void onScrolled(RecyclerView rv, int dx, int dy) {
+                // fetch the next page while the last rows are still a screen or so away
+                GridLayoutManager lm = (GridLayoutManager) rv.getLayoutManager();
+                if (adapter != null && lm.findLastVisibleItemPosition() >= allPhotos.size() - MediaPager.PAGE_SIZE / 2) {
+                    loader.requestMore();
+                }
+            }
+        });
+        MetadataRepository.getInstance().addListener(metaListener);
+
         fabShare.setOnClickListener(v -> showBatchActionsDialog());
         fabPDF.setOnClickListener(v -> promptPdfNameAndCreate());
 
+        showSnapshot();
         loadPhotos();
     }
 
-    private static class Meta { String tags=""; String date=""; boolean favorite=false; }
-    private HashMap<String, Meta> loadMetaMap() {
-        HashMap<String, Meta> map = new HashMap<>();
-        try {
-            JSONArray arr = new JSONArray(prefs.getString("photos", "[]"));
-            for (int i = 0; i < arr.length(); i++) {
-                String entry = arr.getString(i);
-                String[] parts = entry.split("\\|");
-                if (parts.length >= 5) {
-                    Meta m = new Meta();
-                    m.tags = parts[1];
-                    m.date = parts[2];
-                    m.favorite = "true".equals(parts[4]);
-                    map.put(parts[0], m);
-                }
-            }
-        } catch (Exception ignored) {}
-        return map;
+    @Override protected void onStop() {
+        super.onStop();
+        // a snapshot still on screen (fresh list not in yet) isn't worth writing back
+        if (reconciling == null && (loader.isFinished() || !allPhotos.isEmpty())) {
+            LibrarySnapshot.write(this, snapshotKey(), allPhotos);
+        }
     }
 
+    @Override protected void onDestroy() {
+        MetadataRepository.getInstance().removeListener(metaListener);
+        search.shutdown();
+        loader.shutdown();
+        super.onDestroy();
+    }
+
+    private Map<String, PhotoRecord> loadMetaMap() {
+        return MetadataRepository.getInstance().snapshot(prefs);
+    }
+
+    // Tag/favorite edits only refresh the affected items; the photo list itself comes from loadPhotos().
+    private void onMetadataChanged(Set<String> paths) {
+        Map<String, PhotoRecord> meta = loadMetaMap();
+        boolean any = false;
+        for (PhotoInfo p : allPhotos) {
+            if (!paths.contains(p.path)) continue;
+            PhotoRecord m = meta.get(p.path);
+            p.tags = m != null ? m.tags : "";
+            p.date = m != null ? m.date : "";
+            p.favorite = m != null && m.favorite;
+            any = true;
+        }
+        if (!any) return;
+        search.invalidate(paths);
+        if (adapter != null) adapter.notifyPhotosChanged(paths);
+    }
+
+    // Reloads in the background; the current list stays on screen until the first chunk arrives.
     private void loadPhotos() {
-        allPhotos.clear();
-        HashMap<String, Meta> meta = loadMetaMap();
+        PhotoTable t = new PhotoTable();
+        table = t;
+        loader.load(sink -> {
+            Map<String, PhotoRecord> meta = loadMetaMap();
 
-        if (Build.VERSION.SDK_INT >= 29) {
-            String[] proj = { MediaStore.Images.Media._ID };
-            String sel = MediaStore.Images.Media.RELATIVE_PATH + " LIKE ?";
-            String[] args = new String[]{ BASE_REL + "%" };
-            try (Cursor c = getContentResolver().query(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, proj, sel, args, null)) {
-                if (c != null) {
-                    int idIdx = c.getColumnIndexOrThrow(MediaStore.Images.Media._ID);
-                    while (c.moveToNext()) {
-                        long id = c.getLong(idIdx);
-                        Uri u = ContentUris.withAppendedId(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, id);
-                        PhotoInfo p = new PhotoInfo();
-                        p.path = u.toString();
-                        Meta m = meta.get(p.path);
-                        if (m != null) {
-                            p.tags = m.tags;
-                            p.date = m.date;
-                            p.favorite = m.favorite;
-                        }
-                        allPhotos.add(p);
-                    }
+            if (Build.VERSION.SDK_INT >= 29) {
+                // Android 11+: cached library brought up to date by a generation delta, handed out a page
+                // at a time like MediaPager's
+                if (MediaLibrary.sync(this)) {
+                    MediaLibrary.Pager library = MediaLibrary.pager(BASE_REL);
+                    do {
+                        for (MediaLibrary.Row r : library.next()) sink.add(MediaLibrary.toPhoto(r, meta, t));
+                    } while (!library.isExhausted() && sink.awaitDemand());
+                    return;
                 }
+                MediaPager pager = new MediaPager(getContentResolver(), BASE_REL);
+                do {
+                    pager.next(meta, sink, t);
+                } while (!pager.isExhausted() && sink.awaitDemand());
+            } else {
+                File base = new File(Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_PICTURES), "GalleryOrganizer");
+                addLegacyFiles(LegacyScanner.images(this, base, true), meta, sink);
             }
-        } else {
-            File base = new File(Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_PICTURES), "GalleryOrganizer");
-            addLegacyFilesRecursively(base, meta);
-        }
+        });
+    }
+
+    // Last session's grid from LibrarySnapshot, drawn before anything is read; onPhotosLoaded swaps in the
+    // fresh list once it covers as many rows.
+    private void showSnapshot() {
+        String key = snapshotKey();
+        List<PhotoInfo> snap = key == null ? null : LibrarySnapshot.read(this, key);
+        if (snap == null || snap.isEmpty()) return;
+        reconciling = new ArrayList<>();
+        allPhotos.addAll(snap);
+        adapter = new ImprovedPhotoAdapter(allPhotos, this::onPhotoClick, this::onPhotoLongClick);
+        recyclerView.setAdapter(adapter);
+        search.setPhotos(allPhotos);
+        logFirstFrame("snapshot");
+    }
+
+    private String snapshotKey() {
+        return "organized";
+    }
+
+    private void logFirstFrame(String source) {
+        if (createdAt == 0) return;
+        GridTiming.logFirstFrame(recyclerView, "OrganizedGalleryActivity", createdAt, source);
+        createdAt = 0;
+    }
 
+    // Main thread: a chunk of the list being loaded. The first chunk replaces the list, later ones append.
+    private void onPhotosLoaded(List<PhotoInfo> chunk, boolean first, boolean settled) {
+        if (reconciling != null) {
+            // snapshot on screen: keep it until the fresh rows cover it, asking for pages as needed
+            if (first) reconciling.clear();
+            reconciling.addAll(chunk);
+            if (reconciling.size() < allPhotos.size() && !(settled && loader.isFinished())) {
+                if (settled) loader.requestMore();
+                return;
+            }
+            chunk = reconciling;
+            first = true;
+            reconciling = null;
+            // the fresh rows are new objects: carry a selection made on the snapshot grid over by path
+            if (!selectedPhotos.isEmpty()) {
+                Set<String> selected = new HashSet<>();
+                for (PhotoInfo p : selectedPhotos) selected.add(p.path);
+                selectedPhotos.clear();
+                for (PhotoInfo p : chunk) if (selected.contains(p.path)) selectedPhotos.add(p);
+                if (adapter != null) adapter.setSelectedPhotos(selectedPhotos);
+                updateTitle();
+            }
+        }
+        if (first) allPhotos.clear();
+        int start = allPhotos.size();
+        allPhotos.addAll(chunk);
         if (adapter == null) {
             adapter = new ImprovedPhotoAdapter(allPhotos, this::onPhotoClick, this::onPhotoLongClick);
             recyclerView.setAdapter(adapter);
-        } else {
+        } else if (first) {
             adapter.updatePhotos(allPhotos);
+        } else {
+            adapter.notifyPhotosAppended(allPhotos, start, chunk.size());
         }
+        if (!allPhotos.isEmpty()) logFirstFrame("load");
+        if (!settled) return;
+
+        // the search index follows the loaded pages; a query typed meanwhile runs again on the full list
+        search.appendPhotos(allPhotos);
+        String query = searchView.getQuery().toString();
+        if (!query.isEmpty()) search.submit(query);
         updateTitle();
     }
 
-    private void addLegacyFilesRecursively(File dir, HashMap<String, Meta> meta) {
-        if (dir == null || !dir.exists()) return;
-        File[] files = dir.listFiles();
-        if (files == null) return;
+    // Pre-Android 10: image files found by LegacyScanner (parallel walk, cached by directory mtime).
+    private void addLegacyFiles(List<File> files, Map<String, PhotoRecord> meta, PhotoLoader.Sink sink) {
         for (File f : files) {
-            if (f.isDirectory()) { addLegacyFilesRecursively(f, meta); continue; }
-            String n = f.getName().toLowerCase();
-            if (!(n.endsWith(".jpg") || n.endsWith(".jpeg") || n.endsWith(".png") || n.endsWith(".webp"))) continue;
+            if (sink.isCancelled()) return;
             PhotoInfo p = new PhotoInfo();
             p.path = f.getAbsolutePath();
-            Meta m = meta.get(p.path);
+            p.name = f.getName();
+            p.folder = f.getParentFile().getName();
+            PhotoRecord m = meta.get(p.path);
             if (m != null) {
                 p.tags = m.tags;
                 p.date = m.date;
                 p.favorite = m.favorite;
             }
-            allPhotos.add(p);
+            sink.add(p);
         }
     }
 
-    private void searchPhotos(String query) {
-        List<PhotoInfo> results = new ArrayList<>();
-        for (PhotoInfo p : allPhotos) {
-            if ((p.tags != null && p.tags.toLowerCase().contains(query.toLowerCase()))
-                    || (p.date != null && p.date.contains(query))
-                    || (p.path != null && p.path.toLowerCase().contains(query.toLowerCase()))) {
-                results.add(p);
+    // Search thread: "key:value" queries run as a PhotoQuery plan, tag expressions through the tag index;
+    // anything else is a substring of name, folder, tags or date (PhotoColumns.text).
+    private BitSet matchPhotos(String query, PhotoColumns columns, BitSet candidates, SearchController.Token token) {
+        List<PhotoInfo> photos = columns.photos;
+        BitSet hits = new BitSet(photos.size());
+        if (PhotoQuery.isStructured(query)) {
+            hits = PhotoQuery.parse(query).run(columns);
+            hits.and(candidates);
+            return hits;
+        }
+        if (TagFilter.isExpression(query)) {
+            Set<String> tagged = PhotoStore.filterByTags(prefs, query);
+            for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+                if (tagged.contains(photos.get(i).path)) hits.set(i);
             }
+            return hits;
         }
-        if (adapter != null) adapter.updatePhotos(results);
+        hits = columns.text(query.toLowerCase(Locale.ROOT));
+        hits.and(candidates);
+        return hits;
     }
 
     private void onPhotoClick(PhotoInfo photo) {
@@ -261,13 +376,18 @@ public class OrganizedGalleryActivity extends AppCompatActivity {
 
     private void copyPhotosToFolder(String destFolder) {
         int count = 0;
+        PhotoStore.Editor edits = PhotoStore.edit(prefs);
         for (PhotoInfo p : selectedPhotos) {
             try {
                 if (isContentUri(p.path) && Build.VERSION.SDK_INT >= 29) {
                     Uri src = Uri.parse(p.path);
                     String dn = "IMG_" + System.currentTimeMillis() + ".jpg";
                     String mm = "image/jpeg";
-                    try (Cursor c = getContentResolver().query(src, new String[]{ MediaStore.Images.Media.DISPLAY_NAME, MediaStore.Images.Media.MIME_TYPE }, null, null, null)) {
+                    int row = table.find(p.path);
+                    if (row >= 0) {
+                        dn = table.name(row);
+                        mm = table.mime(row);
+                    } else try (Cursor c = getContentResolver().query(src, new String[]{ MediaStore.Images.Media.DISPLAY_NAME, MediaStore.Images.Media.MIME_TYPE }, null, null, null)) {
                         if (c != null && c.moveToFirst()) {
                             dn = c.getString(c.getColumnIndexOrThrow(MediaStore.Images.Media.DISPLAY_NAME));
                             mm = c.getString(c.getColumnIndexOrThrow(MediaStore.Images.Media.MIME_TYPE));
@@ -279,13 +399,14 @@ public class OrganizedGalleryActivity extends AppCompatActivity {
                     cv.put(MediaStore.Images.Media.RELATIVE_PATH, BASE_REL + destFolder + "/");
                     Uri out = getContentResolver().insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, cv);
                     if (out == null) continue;
+                    FolderStats.touch(out);
                     try (InputStream in = getContentResolver().openInputStream(src);
                          java.io.OutputStream os = getContentResolver().openOutputStream(out, "w")) {
                         if (in == null || os == null) { getContentResolver().delete(out, null, null); continue; }
                         byte[] buf = new byte[8192]; int len;
                         while ((len = in.read(buf)) > 0) os.write(buf, 0, len);
                     }
-                    PhotoStore.addNew(prefs, out.toString(), "", false);
+                    edits.addNew(out.toString(), "", false);
                     count++;
                 } else {
                     File src = new File(p.path);
@@ -298,11 +419,12 @@ public class OrganizedGalleryActivity extends AppCompatActivity {
                         byte[] buf = new byte[8192]; int len;
                         while ((len = in.read(buf)) > 0) out.write(buf, 0, len);
                     }
-                    PhotoStore.addNew(prefs, dst.getAbsolutePath(), "", false);
+                    edits.addNew(dst.getAbsolutePath(), "", false);
                     count++;
                 }
             } catch (Exception ignored) {}
         }
+        edits.apply();
         Toast.makeText(this, count + " photos copied", Toast.LENGTH_SHORT).show();
         clearSelection();
         loadPhotos();
@@ -310,13 +432,18 @@ public class OrganizedGalleryActivity extends AppCompatActivity {
 
     private void movePhotosToFolder(String destFolder) {
         int count = 0;
+        PhotoStore.Editor edits = PhotoStore.edit(prefs);
         for (PhotoInfo p : selectedPhotos) {
             try {
                 if (isContentUri(p.path) && Build.VERSION.SDK_INT >= 29) {
                     Uri src = Uri.parse(p.path);
                     String dn = "IMG_" + System.currentTimeMillis() + ".jpg";
                     String mm = "image/jpeg";
-                    try (Cursor c = getContentResolver().query(src, new String[]{ MediaStore.Images.Media.DISPLAY_NAME, MediaStore.Images.Media.MIME_TYPE }, null, null, null)) {
+                    int row = table.find(p.path);
+                    if (row >= 0) {
+                        dn = table.name(row);
+                        mm = table.mime(row);
+                    } else try (Cursor c = getContentResolver().query(src, new String[]{ MediaStore.Images.Media.DISPLAY_NAME, MediaStore.Images.Media.MIME_TYPE }, null, null, null)) {
                         if (c != null && c.moveToFirst()) {
                             dn = c.getString(c.getColumnIndexOrThrow(MediaStore.Images.Media.DISPLAY_NAME));
                             mm = c.getString(c.getColumnIndexOrThrow(MediaStore.Images.Media.MIME_TYPE));
@@ -328,6 +455,7 @@ public class OrganizedGalleryActivity extends AppCompatActivity {
                     cv.put(MediaStore.Images.Media.RELATIVE_PATH, BASE_REL + destFolder + "/");
                     Uri out = getContentResolver().insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, cv);
                     if (out == null) continue;
+                    FolderStats.touch(out);
                     try (InputStream in = getContentResolver().openInputStream(src);
                          java.io.OutputStream os = getContentResolver().openOutputStream(out, "w")) {
                         if (in == null || os == null) { getContentResolver().delete(out, null, null); continue; }
@@ -335,7 +463,8 @@ public class OrganizedGalleryActivity extends AppCompatActivity {
                         while ((len = in.read(buf)) > 0) os.write(buf, 0, len);
                     }
                     getContentResolver().delete(src, null, null);
-                    PhotoStore.replacePath(prefs, src.toString(), out.toString());
+                    FolderStats.touch(src);
+                    edits.replacePath(src.toString(), out.toString());
                     count++;
                 } else {
                     File src = new File(p.path);
@@ -349,12 +478,13 @@ public class OrganizedGalleryActivity extends AppCompatActivity {
                         while ((len = in.read(buf)) > 0) out.write(buf, 0, len);
                     }
                     if (src.delete()) {
-                        PhotoStore.replacePath(prefs, src.getAbsolutePath(), dst.getAbsolutePath());
+                        edits.replacePath(src.getAbsolutePath(), dst.getAbsolutePath());
                         count++;
                     }
                 }
             } catch (Exception ignored) {}
         }
+        edits.apply();
         Toast.makeText(this, count + " photos moved", Toast.LENGTH_SHORT).show();
         clearSelection();
         loadPhotos();
@@ -595,19 +725,22 @@ public class OrganizedGalleryActivity extends AppCompatActivity {
     private String getFolderNameForPhoto(PhotoInfo p) {
         try {
             if (p.path.startsWith("content://")) {
-                Uri u = Uri.parse(p.path);
-                try (Cursor c = getContentResolver().query(u,
+                String rel = null;
+                int row = table.find(p.path);
+                if (row >= 0) {
+                    rel = table.relPath(row);
+                } else try (Cursor c = getContentResolver().query(Uri.parse(p.path),
                         new String[]{MediaStore.Images.Media.RELATIVE_PATH}, null, null, null)) {
                     if (c != null && c.moveToFirst()) {
-                        String rel = c.getString(c.getColumnIndexOrThrow(MediaStore.Images.Media.RELATIVE_PATH));
-                        if (rel != null && rel.startsWith(BASE_REL)) {
-                            String rem = rel.substring(BASE_REL.length());
-                            if (rem.endsWith("/")) rem = rem.substring(0, rem.length()-1);
-                            int slash = rem.indexOf("/");
-                            return slash > 0 ? rem.substring(0, slash) : rem;
-                        }
+                        rel = c.getString(c.getColumnIndexOrThrow(MediaStore.Images.Media.RELATIVE_PATH));
                     }
                 }
+                if (rel != null && rel.startsWith(BASE_REL)) {
+                    String rem = rel.substring(BASE_REL.length());
+                    if (rem.endsWith("/")) rem = rem.substring(0, rem.length()-1);
+                    int slash = rem.indexOf("/");
+                    return slash > 0 ? rem.substring(0, slash) : rem;
+                }
             } else {
                 String path = p.path.replace("\\", "/");
                 int i = path.indexOf("/Pictures/GalleryOrganizer/");
@@ -660,17 +793,20 @@ public class OrganizedGalleryActivity extends AppCompatActivity {
                 .setTitle("Delete Photos")
                 .setMessage("Delete " + selectedPhotos.size() + " photos?")
                 .setPositiveButton("Delete", (d, w) -> {
+                    PhotoStore.Editor edits = PhotoStore.edit(prefs);
                     for (PhotoInfo p : selectedPhotos) {
                         try {
                             if (isContentUri(p.path)) {
                                 getContentResolver().delete(Uri.parse(p.path), null, null);
+                                FolderStats.touch(Uri.parse(p.path));
                             } else {
                                 File f = new File(p.path);
                                 if (f.exists()) f.delete();
                             }
-                            PhotoStore.removeByExactPath(prefs, p.path);
+                            edits.removeByExactPath(p.path);
                         } catch (Exception ignored) {}
                     }
+                    edits.apply();
                     Toast.makeText(this, "Deleted", Toast.LENGTH_SHORT).show();
                     clearSelection();
                     loadPhotos();
@@ -694,7 +830,15 @@ public class OrganizedGalleryActivity extends AppCompatActivity {
                 String[] proj = { MediaStore.Images.Media.DISPLAY_NAME, MediaStore.Images.Media.SIZE,
                         MediaStore.Images.Media.WIDTH, MediaStore.Images.Media.HEIGHT,
                         MediaStore.Images.Media.DATE_TAKEN };
-                try (Cursor c = getContentResolver().query(u, proj, null, null, null)) {
+                int row = table.find(p.path);
+                if (row >= 0) {
+                    name = table.name(row);
+                    size = table.size(row);
+                    w = table.width(row);
+                    h = table.height(row);
+                    if (table.dateTaken(row) > 0) date = new java.text.SimpleDateFormat("yyyy-MM-dd HH:mm", java.util.Locale.getDefault())
+                            .format(new java.util.Date(table.dateTaken(row)));
+                } else try (Cursor c = getContentResolver().query(u, proj, null, null, null)) {
                     if (c != null && c.moveToFirst()) {
                         int idxN = c.getColumnIndex(MediaStore.Images.Media.DISPLAY_NAME);
                         int idxS = c.getColumnIndex(MediaStore.Images.Media.SIZE);
@@ -0,0 +1,234 @@
+package com.nader.galleryorganizer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Column-wise indexes over one gallery list (positions = list order), kept on the search thread so
+// PhotoQuery plans never walk PhotoInfo objects: favorite bitset, tag and folder postings, sorted dates,
+// and pre-lowered text keys for substring matches no index covers. A loaded page only indexes its new rows
+// (append), and a tag/favorite edit only re-derives the edited rows (update).
+final class PhotoColumns {
+    // below this many positions a scan stays on the calling thread; above, ForkJoin leaves are this size
+    private static final int SCAN_CHUNK = 4096;
+
+    final List<PhotoInfo> photos = new ArrayList<>();        // the indexed rows, in list order
+    int size;
+    final TrigramIndex names = new TrigramIndex();           // name + folder substrings
+    final BitSet favorites = new BitSet();
+    final HashMap<String, BitSet> byTag = new HashMap<>();   // normalized tag -> positions
+    final HashMap<String, BitSet> byFolder = new HashMap<>(); // lower-case folder name -> positions
+    long[] byDate = new long[0];                             // (yyyyMMdd << 32 | position), ascending
+    String[] keys = new String[0];                           // "name\nfolder\ntags\ndate", lower-case
+    private String[] tags = new String[0];                   // tags as indexed, to clear their postings
+
+    // Whether list starts with exactly the rows indexed so far (same objects, same order).
+    boolean isPrefixOf(List<PhotoInfo> list) {
+        if (list.size() < size) return false;
+        for (int i = 0; i < size; i++) if (list.get(i) != photos.get(i)) return false;
+        return true;
+    }
+
+    // Indexes the rows of list after the first size (see isPrefixOf).
+    void append(List<PhotoInfo> list) {
+        int from = size, to = list.size();
+        if (to <= from) return;
+        keys = Arrays.copyOf(keys, to);
+        tags = Arrays.copyOf(tags, to);
+        long[] dates = new long[to - from];
+        for (int i = from; i < to; i++) {
+            PhotoInfo p = list.get(i);
+            photos.add(p);
+            names.add(p.name + "\n" + p.folder);
+            posting(byFolder, p.folder.toLowerCase(Locale.ROOT)).set(i);
+            dates[i - from] = index(i, p);
+        }
+        size = to;
+        mergeDates(null, dates);
+    }
+
+    // Re-derives tags, favorite and date of the rows with these paths, after the PhotoInfos were edited
+    // in place. Name and folder don't change that way, so the trigram and folder postings stay.
+    void update(Set<String> paths) {
+        BitSet changed = new BitSet(size);
+        for (int i = 0; i < size; i++) if (paths.contains(photos.get(i).path)) changed.set(i);
+        if (changed.isEmpty()) return;
+        long[] dates = new long[changed.cardinality()];
+        int k = 0;
+        for (int i = changed.nextSetBit(0); i >= 0; i = changed.nextSetBit(i + 1)) {
+            for (String tag : TagDictionary.split(tags[i])) {
+                BitSet b = byTag.get(tag);
+                if (b == null) continue;
+                b.clear(i);
+                if (b.isEmpty()) byTag.remove(tag);
+            }
+            dates[k++] = index(i, photos.get(i));
+        }
+        mergeDates(changed, dates);
+    }
+
+    // keys, tags, favorite and tag postings of row i; returns its byDate entry
+    private long index(int i, PhotoInfo p) {
+        keys[i] = (p.name + "\n" + p.folder + "\n" + (p.tags != null ? p.tags : "") + "\n"
+                + (p.date != null ? p.date : "")).toLowerCase(Locale.ROOT);
+        tags[i] = p.tags;
+        favorites.set(i, p.favorite);
+        for (String tag : TagDictionary.split(p.tags)) posting(byTag, tag).set(i);
+        return ((long) dayKey(p.date) << 32) | i;
+    }
+
+    // byDate without the entries of positions in dropped, merged with added; O(size + added log added)
+    private void mergeDates(BitSet dropped, long[] added) {
+        Arrays.sort(added);
+        long[] out = new long[size];
+        int n = 0, a = 0;
+        for (long e : byDate) {
+            if (dropped != null && dropped.get((int) e)) continue;
+            while (a < added.length && added[a] < e) out[n++] = added[a++];
+            out[n++] = e;
+        }
+        while (a < added.length) out[n++] = added[a++];
+        byDate = out;
+    }
+
+    // Positions dated in [from, toExclusive), both yyyyMMdd.
+    BitSet dateRange(int from, int toExclusive) {
+        int lo = lowerBound(from), hi = lowerBound(toExclusive);
+        BitSet out = new BitSet(size);
+        for (int k = lo; k < hi; k++) out.set((int) byDate[k]);
+        return out;
+    }
+
+    int dateRangeCount(int from, int toExclusive) {
+        return Math.max(0, lowerBound(toExclusive) - lowerBound(from));
+    }
+
+    // Positions whose name, folder, tags or date contain q (already lower-case): plain search and PhotoQuery's
+    // free-text terms. Indexes answer when they cover the query: trigrams for name + folder, tag postings,
+    // and the byDate range of a "2024" / "2024-03" / "2024-03-09" period (see dayRange). Queries under 3
+    // chars, digit queries that aren't a period ("03-09") and text that can span a tag boundary (a comma or
+    // an outer space) have no index and take the parallel key scan; so does a list with nearly as many
+    // distinct tags as rows, where checking each tag costs about a scan.
+    BitSet text(String q) {
+        int[] range = dayRange(q);
+        if (q.length() < 3 || (range == null && dateLike(q)) || q.indexOf(',') >= 0 || !q.trim().equals(q)
+                || byTag.size() > size / 4) return scan(q);
+        BitSet out = names.search(q);
+        for (Map.Entry<String, BitSet> e : byTag.entrySet()) if (e.getKey().contains(q)) out.or(e.getValue());
+        if (range != null) out.or(dateRange(range[0], range[1]));
+        return out;
+    }
+
+    // text() for the single position i
+    boolean textAt(String q, int i) {
+        if (keys[i].contains(q)) return true;
+        int[] range = dayRange(q);
+        if (range == null) return false;
+        int d = dayKey(photos.get(i).date);
+        return d >= range[0] && d < range[1];
+    }
+
+    // only digits and '-': could be part of a yyyy-MM-dd date
+    private static boolean dateLike(String q) {
+        for (int i = 0; i < q.length(); i++) {
+            char ch = q.charAt(i);
+            if (ch != '-' && (ch < '0' || ch > '9')) return false;
+        }
+        return true;
+    }
+
+    // Positions whose key contains q (already lower-case). Large lists are split across the common
+    // ForkJoinPool; each chunk fills its own bitset and positions keep the list order when merged.
+    BitSet scan(String q) {
+        if (size < 2 * SCAN_CHUNK || ForkJoinPool.getCommonPoolParallelism() < 2) return scan(q, 0, size);
+        return ForkJoinPool.commonPool().invoke(new Scan(q, 0, size));
+    }
+
+    private BitSet scan(String q, int from, int to) {
+        BitSet out = new BitSet(to);
+        for (int i = from; i < to; i++) if (keys[i].contains(q)) out.set(i);
+        return out;
+    }
+
+    private final class Scan extends RecursiveTask<BitSet> {
+        private final String q;
+        private final int from, to;
+
+        Scan(String q, int from, int to) {
+            this.q = q;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override protected BitSet compute() {
+            if (to - from <= SCAN_CHUNK) return scan(q, from, to);
+            int mid = (from + to) >>> 1;
+            Scan right = new Scan(q, mid, to);
+            right.fork();
+            BitSet out = new Scan(q, from, mid).compute();
+            out.or(right.join());
+            return out;
+        }
+    }
+
+    BitSet all() {
+        BitSet b = new BitSet(size);
+        b.set(0, size);
+        return b;
+    }
+
+    // first index in byDate whose day >= day
+    private int lowerBound(int day) {
+        long key = (long) day << 32;
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (byDate[mid] < key) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    // "2024-03-09" -> 20240309; unparseable dates sort first as 0
+    static int dayKey(String date) {
+        if (date == null || date.length() < 10) return 0;
+        try {
+            return Integer.parseInt(date.substring(0, 4)) * 10000
+                    + Integer.parseInt(date.substring(5, 7)) * 100
+                    + Integer.parseInt(date.substring(8, 10));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    // "2024" / "2024-03" / "2024-03-09" -> {first day, first day after} as yyyyMMdd, or null for any other
+    // query. A trailing partial part ("2024-0", "2024-03-") is ignored, so the period only narrows while typing.
+    static int[] dayRange(String query) {
+        if (query == null || query.length() < 4 || query.length() > 10) return null;
+        for (int i = 0; i < query.length(); i++) {
+            char ch = query.charAt(i);
+            boolean dash = i == 4 || i == 7;
+            if (dash ? ch != '-' : (ch < '0' || ch > '9')) return null;
+        }
+        int y = Integer.parseInt(query.substring(0, 4));
+        int m = query.length() >= 7 ? Integer.parseInt(query.substring(5, 7)) : 0;
+        int d = m > 0 && query.length() == 10 ? Integer.parseInt(query.substring(8, 10)) : 0;
+        if (m > 12 || d > 31 || (query.length() >= 7 && m == 0) || (query.length() == 10 && d == 0)) return null;
+        if (d > 0) return new int[]{y * 10000 + m * 100 + d, y * 10000 + m * 100 + d + 1};
+        if (m > 0) return new int[]{y * 10000 + m * 100, y * 10000 + (m + 1) * 100};
+        return new int[]{y * 10000, (y + 1) * 10000};
+    }
+
+    private static BitSet posting(HashMap<String, BitSet> map, String key) {
+        BitSet b = map.get(key);
+        if (b == null) map.put(key, b = new BitSet());
+        return b;
+    }
+}
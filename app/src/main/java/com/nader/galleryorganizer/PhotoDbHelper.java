@@ -0,0 +1,40 @@
+package com.nader.galleryorganizer;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+public class PhotoDbHelper extends SQLiteOpenHelper {
+    public static final String DB_NAME = "photos.db";
+    public static final int DB_VERSION = 1;
+
+    public static final String TABLE = "photos";
+    public static final String COL_PATH = "path";         // file path (legacy) or content:// uri (scoped)
+    public static final String COL_TAGS = "tags";
+    public static final String COL_DATE = "date";         // yyyy-MM-dd
+    public static final String COL_TS = "ts";             // ms
+    public static final String COL_FAVORITE = "favorite"; // 0/1
+
+    public PhotoDbHelper(Context context) {
+        super(context.getApplicationContext(), DB_NAME, null, DB_VERSION);
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE + " ("
+                + COL_PATH + " TEXT PRIMARY KEY NOT NULL, "
+                + COL_TAGS + " TEXT NOT NULL DEFAULT '', "
+                + COL_DATE + " TEXT NOT NULL DEFAULT '', "
+                + COL_TS + " INTEGER NOT NULL DEFAULT 0, "
+                + COL_FAVORITE + " INTEGER NOT NULL DEFAULT 0)");
+        db.execSQL("CREATE INDEX idx_photos_tags ON " + TABLE + " (" + COL_TAGS + ")");
+        db.execSQL("CREATE INDEX idx_photos_date ON " + TABLE + " (" + COL_DATE + ", " + COL_TS + ")");
+        db.execSQL("CREATE INDEX idx_photos_favorite ON " + TABLE + " (" + COL_FAVORITE + ")");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // v1 is the first schema; nothing to migrate yet
+    }
+}
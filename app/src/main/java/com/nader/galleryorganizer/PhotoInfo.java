@@ -2,8 +2,11 @@ package com.nader.galleryorganizer;
 
 public class PhotoInfo {
     public String path = "";
+    public String name = "";   // file / DISPLAY_NAME
+    public String folder = ""; // name of the containing folder
     public String tags = "";
     public String date = "";
     public String note = "";
     public boolean favorite = false;
+    public long added;         // MediaStore DATE_ADDED (scoped storage), seconds
 }
\ No newline at end of file
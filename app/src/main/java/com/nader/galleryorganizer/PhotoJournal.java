@@ -0,0 +1,109 @@
+package com.nader.galleryorganizer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+// Append-only log of metadata changes made since photos.db was last compacted.
+// Every record (PhotoRecordCodec) carries the full new state of one path, so replaying it twice is harmless.
+class PhotoJournal {
+    interface Sink {
+        void put(PhotoRecord r);
+        void delete(String path);
+    }
+
+    private final File file;
+    private OutputStream out;
+    private PhotoRecordCodec.Writer writer;
+
+    PhotoJournal(File file) {
+        this.file = file;
+    }
+
+    // Replays every complete record; a torn tail left by a crash mid-append is cut off.
+    void replay(Sink sink) {
+        if (!file.exists() || file.length() == 0) return;
+        long good = -1; // end of the last complete record; -1 = no readable header
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            PhotoRecordCodec.Reader reader = new PhotoRecordCodec.Reader(in);
+            if (reader.readHeader()) {
+                good = reader.position();
+                int op;
+                while ((op = reader.next()) >= 0) {
+                    if (op == PhotoRecordCodec.PUT) sink.put(reader.record);
+                    else sink.delete(reader.path);
+                    good = reader.position();
+                }
+            }
+        } catch (IOException ignored) {}
+        if (good < 0) {
+            // Torn header or unreadable file: photos.db (already loaded) stands as is. The file is moved
+            // aside rather than truncated or appended to, so whatever it holds survives; appends start a
+            // new journal.
+            File aside = new File(file.getPath() + ".bad");
+            aside.delete();
+            file.renameTo(aside);
+            return;
+        }
+        if (good < file.length()) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(good);
+            } catch (IOException ignored) {}
+        }
+    }
+
+    // records.get(i) == null means paths.get(i) was removed. A batch that fails partway is cut off again, so
+    // neither a torn record nor a tag id whose definition never reached disk is left for the next append.
+    void append(List<String> paths, List<PhotoRecord> records) throws IOException {
+        long before = file.length();
+        try {
+            if (writer == null) {
+                boolean fresh = before == 0;
+                out = new BufferedOutputStream(new FileOutputStream(file, true));
+                writer = new PhotoRecordCodec.Writer(out);
+                // tag ids from an earlier process are unknown here, so start a new dictionary
+                if (fresh) writer.writeHeader();
+                else writer.reset();
+            }
+            for (int i = 0; i < paths.size(); i++) {
+                PhotoRecord r = records.get(i);
+                if (r == null) writer.delete(paths.get(i));
+                else writer.put(r);
+            }
+            writer.flush();
+        } catch (IOException | RuntimeException e) {
+            // the next append reopens with a fresh header or reset()
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {}
+            }
+            out = null;
+            writer = null;
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                if (raf.length() > before) raf.setLength(before);
+            } catch (IOException ignored) {}
+            throw e;
+        }
+    }
+
+    long length() {
+        return file.length();
+    }
+
+    void truncate() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+            writer = null;
+        }
+        new FileOutputStream(file, false).close();
+    }
+}
@@ -0,0 +1,161 @@
+package com.nader.galleryorganizer;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Builds a gallery list off the main thread (MediaStore cursor, metadata snapshot, legacy file walk) and
+// hands it over in chunks: the first FIRST_CHUNK photos as soon as they are read, so a screenful can be
+// bound right away, then CHUNK at a time. Paged sources stop after each page until the grid asks for
+// more (requestMore) or a search needs the whole list (requestAll). A new load() cancels the running
+// one; its chunks are dropped.
+class PhotoLoader {
+    interface Source {
+        // loader thread; adds photos in display order
+        void load(Sink sink);
+    }
+
+    interface Callback {
+        // main thread; first = start of a new list, settled = nothing more follows until requested (or at all)
+        void onChunk(List<PhotoInfo> chunk, boolean first, boolean settled);
+    }
+
+    interface Refetch {
+        // refresh thread
+        List<PhotoInfo> fetch();
+    }
+
+    interface Refetched {
+        // main thread
+        void onRefetched(List<PhotoInfo> rows);
+    }
+
+    final class Sink {
+        private final int gen;
+        private List<PhotoInfo> buffer = new ArrayList<>();
+        private boolean first = true;
+
+        private Sink(int gen) { this.gen = gen; }
+
+        void add(PhotoInfo p) {
+            buffer.add(p);
+            if (buffer.size() >= (first ? FIRST_CHUNK : CHUNK)) deliver(false);
+        }
+
+        boolean isCancelled() { return generation.get() != gen; }
+
+        // End of a page: hands over what was read and blocks until more is wanted; false once cancelled.
+        boolean awaitDemand() {
+            synchronized (PhotoLoader.this) {
+                if (!unbounded && (!wanted || !buffer.isEmpty())) deliver(!wanted);
+                try {
+                    while (!wanted && !unbounded && !isCancelled()) PhotoLoader.this.wait();
+                } catch (InterruptedException e) {
+                    return false;
+                }
+                wanted = false;
+            }
+            return !isCancelled();
+        }
+
+        private void deliver(boolean settled) {
+            final List<PhotoInfo> chunk = buffer;
+            final boolean isFirst = first;
+            buffer = new ArrayList<>();
+            first = false;
+            main.post(() -> {
+                if (!isCancelled()) callback.onChunk(chunk, isFirst, settled);
+            });
+        }
+    }
+
+    private static final int FIRST_CHUNK = 48;
+    private static final int CHUNK = 500;
+
+    private final Callback callback;
+    private final Handler main = new Handler(Looper.getMainLooper());
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "PhotoLoader");
+        t.setDaemon(true);
+        return t;
+    });
+    // small re-fetches of changed rows; the load thread may be parked waiting for demand
+    private final ExecutorService refresher = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "PhotoLoader-refresh");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicInteger generation = new AtomicInteger();
+    private volatile int finished = -1; // generation whose source ran to the end
+    private boolean wanted, unbounded; // guarded by this
+
+    PhotoLoader(Callback callback) {
+        this.callback = callback;
+    }
+
+    void load(Source source) {
+        final Sink sink;
+        synchronized (this) {
+            sink = new Sink(generation.incrementAndGet());
+            wanted = false;
+            unbounded = false;
+            notifyAll();
+        }
+        worker.execute(() -> {
+            if (sink.isCancelled()) return;
+            try {
+                source.load(sink);
+            } catch (Exception ignored) {}
+            if (sink.isCancelled()) return;
+            finished = sink.gen;
+            sink.deliver(true);
+        });
+    }
+
+    // true once the current load has read everything (no pages left)
+    boolean isFinished() {
+        return finished == generation.get();
+    }
+
+    // Runs task off the main thread and hands its rows to done, unless a load() started in between.
+    void refetch(Refetch task, Refetched done) {
+        final int gen = generation.get();
+        refresher.execute(() -> {
+            List<PhotoInfo> rows;
+            try {
+                rows = task.fetch();
+            } catch (Exception e) {
+                return;
+            }
+            main.post(() -> {
+                if (generation.get() == gen) done.onRefetched(rows);
+            });
+        });
+    }
+
+    // The grid is close to the end of what's loaded: read one more page.
+    synchronized void requestMore() {
+        wanted = true;
+        notifyAll();
+    }
+
+    // Read every remaining page (searching needs the whole list).
+    synchronized void requestAll() {
+        unbounded = true;
+        notifyAll();
+    }
+
+    void shutdown() {
+        synchronized (this) {
+            generation.incrementAndGet();
+            notifyAll();
+        }
+        worker.shutdownNow();
+        refresher.shutdownNow();
+    }
+}
@@ -0,0 +1,287 @@
+package com.nader.galleryorganizer;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+// Structured gallery query, parsed once into a plan of ANDed predicates:
+//   tag:invoice fav:true date:2024-01..2024-03 folder:Receipts recent:30 beach
+// date: takes yyyy, yyyy-MM or yyyy-MM-dd, optionally as an open or closed "a..b" range; recent:N is the
+// last N days including today. Bare words match names, folders, tags and dates as substrings. run()
+// evaluates the most selective predicate first, then either ANDs in the next predicate's bitset or, when
+// the survivors are fewer, tests the survivors directly. matches() tests a single PhotoStore record
+// (smart albums): name and folder come from a file path, or from MediaNames for a content URI.
+final class PhotoQuery {
+    // Display name and folder of content:// records, which only MediaStore knows (see MediaLibrary.names).
+    interface MediaNames {
+        // {display name, folder name} of uri, or null when it isn't known
+        String[] lookup(String uri);
+    }
+
+    private interface Predicate {
+        int estimate(PhotoColumns c);
+        BitSet eval(PhotoColumns c);
+        boolean test(PhotoColumns c, int i);
+        boolean matches(PhotoRecord r, String name, String folder, int today);
+    }
+
+    private final List<Predicate> predicates;
+    private final boolean relative;
+
+    private PhotoQuery(List<Predicate> predicates, boolean relative) {
+        this.predicates = predicates;
+        this.relative = relative;
+    }
+
+    // true when the query uses at least one key: prefix
+    static boolean isStructured(String query) {
+        for (String t : tokenize(query)) if (keyOf(t) != null) return true;
+        return false;
+    }
+
+    static PhotoQuery parse(String query) {
+        List<Predicate> out = new ArrayList<>();
+        boolean relative = false;
+        for (String t : tokenize(query)) {
+            String key = keyOf(t);
+            String value = unquote(key == null ? t : t.substring(key.length() + 1));
+            if (value.isEmpty()) continue;
+            if (key == null) out.add(text(value));
+            else if (key.equals("tag")) out.add(posting(true, TagDictionary.normalize(value)));
+            else if (key.equals("folder")) out.add(posting(false, value.toLowerCase(Locale.ROOT)));
+            else if (key.equals("fav")) out.add(favorite(value));
+            else if (key.equals("recent")) { out.add(recent(value)); relative = true; }
+            else out.add(dateRange(value));
+        }
+        return new PhotoQuery(out, relative);
+    }
+
+    // true when the result depends on today's date (recent:), so it shrinks as days pass
+    boolean isRelative() {
+        return relative;
+    }
+
+    // Whether one stored record satisfies every predicate; today as yyyyMMdd. media may be null, leaving
+    // content URIs without a name or folder.
+    boolean matches(PhotoRecord r, int today, MediaNames media) {
+        String name = "", folder = "";
+        if (r.path.startsWith("content://")) {
+            String[] nf = media != null ? media.lookup(r.path) : null;
+            if (nf != null) { name = nf[0]; folder = nf[1]; }
+        } else {
+            name = r.path.substring(r.path.lastIndexOf('/') + 1);
+            folder = folderOf(r.path);
+        }
+        for (Predicate p : predicates) if (!p.matches(r, name, folder, today)) return false;
+        return true;
+    }
+
+    // Positions in c matching every predicate.
+    BitSet run(PhotoColumns c) {
+        if (predicates.isEmpty()) return c.all();
+        List<Predicate> plan = new ArrayList<>(predicates);
+        final int[] est = new int[plan.size()];
+        for (int i = 0; i < est.length; i++) est[i] = plan.get(i).estimate(c);
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < est.length; i++) order.add(i);
+        Collections.sort(order, (a, b) -> Integer.compare(est[a], est[b]));
+
+        BitSet result = null;
+        for (int k : order) {
+            Predicate p = plan.get(k);
+            if (result == null) {
+                result = p.eval(c);
+            } else if (result.cardinality() < est[k]) {
+                for (int i = result.nextSetBit(0); i >= 0; i = result.nextSetBit(i + 1)) {
+                    if (!p.test(c, i)) result.clear(i);
+                }
+            } else {
+                result.and(p.eval(c));
+            }
+            if (result.isEmpty()) break;
+        }
+        return result;
+    }
+
+// Predicates
+
+    private static Predicate posting(boolean tag, String key) {
+        return new Predicate() {
+            private BitSet bits(PhotoColumns c) {
+                BitSet b = (tag ? c.byTag : c.byFolder).get(key);
+                return b != null ? b : new BitSet();
+            }
+            @Override public int estimate(PhotoColumns c) { return bits(c).cardinality(); }
+            @Override public BitSet eval(PhotoColumns c) { return (BitSet) bits(c).clone(); }
+            @Override public boolean test(PhotoColumns c, int i) { return bits(c).get(i); }
+            @Override public boolean matches(PhotoRecord r, String name, String folder, int today) {
+                if (!tag) return folder.toLowerCase(Locale.ROOT).equals(key);
+                for (String t : TagDictionary.split(r.tags)) if (t.equals(key)) return true;
+                return false;
+            }
+        };
+    }
+
+    private static Predicate favorite(String value) {
+        String v = value.toLowerCase(Locale.ROOT);
+        boolean want = v.equals("true") || v.equals("yes") || v.equals("1");
+        return new Predicate() {
+            @Override public int estimate(PhotoColumns c) {
+                int fav = c.favorites.cardinality();
+                return want ? fav : c.size - fav;
+            }
+            @Override public BitSet eval(PhotoColumns c) {
+                if (want) return (BitSet) c.favorites.clone();
+                BitSet b = c.all();
+                b.andNot(c.favorites);
+                return b;
+            }
+            @Override public boolean test(PhotoColumns c, int i) { return c.favorites.get(i) == want; }
+            @Override public boolean matches(PhotoRecord r, String name, String folder, int today) {
+                return r.favorite == want;
+            }
+        };
+    }
+
+    private static Predicate dateRange(String value) {
+        int dots = value.indexOf("..");
+        int from, to;
+        if (dots < 0) {
+            from = dayBound(value, false);
+            to = dayBound(value, true);
+        } else {
+            String a = value.substring(0, dots), b = value.substring(dots + 2);
+            from = a.isEmpty() ? 1 : dayBound(a, false); // 0 = undated
+            to = b.isEmpty() ? Integer.MAX_VALUE : dayBound(b, true);
+        }
+        final int lo = from, hi = to;
+        return new Predicate() {
+            @Override public int estimate(PhotoColumns c) { return c.dateRangeCount(lo, hi); }
+            @Override public BitSet eval(PhotoColumns c) { return c.dateRange(lo, hi); }
+            @Override public boolean test(PhotoColumns c, int i) {
+                int d = PhotoColumns.dayKey(c.photos.get(i).date);
+                return d >= lo && d < hi;
+            }
+            @Override public boolean matches(PhotoRecord r, String name, String folder, int today) {
+                int d = PhotoColumns.dayKey(r.date);
+                return d >= lo && d < hi;
+            }
+        };
+    }
+
+    private static Predicate recent(String value) {
+        int n;
+        try { n = Math.max(1, Integer.parseInt(value.endsWith("d") ? value.substring(0, value.length() - 1) : value)); }
+        catch (NumberFormatException e) { n = 30; }
+        final int days = n;
+        return new Predicate() {
+            private int day = -1, from; // from = first included day for today = day
+
+            private int from(int today) {
+                if (today != day) { from = daysBefore(today, days - 1); day = today; }
+                return from;
+            }
+            @Override public int estimate(PhotoColumns c) { return c.dateRangeCount(from(today()), Integer.MAX_VALUE); }
+            @Override public BitSet eval(PhotoColumns c) { return c.dateRange(from(today()), Integer.MAX_VALUE); }
+            @Override public boolean test(PhotoColumns c, int i) {
+                return PhotoColumns.dayKey(c.photos.get(i).date) >= from(today());
+            }
+            @Override public boolean matches(PhotoRecord r, String name, String folder, int today) {
+                return PhotoColumns.dayKey(r.date) >= from(today);
+            }
+        };
+    }
+
+    // free text: substring of name, folder, tags or date, the same match as plain search (PhotoColumns.text)
+    private static Predicate text(String value) {
+        String q = value.toLowerCase(Locale.ROOT);
+        int[] period = PhotoColumns.dayRange(q);
+        return new Predicate() {
+            @Override public int estimate(PhotoColumns c) { return c.size; }
+            @Override public BitSet eval(PhotoColumns c) { return c.text(q); }
+            @Override public boolean test(PhotoColumns c, int i) { return c.textAt(q, i); }
+            @Override public boolean matches(PhotoRecord r, String name, String folder, int today) {
+                return name.toLowerCase(Locale.ROOT).contains(q)
+                        || folder.toLowerCase(Locale.ROOT).contains(q)
+                        || (r.tags != null && r.tags.toLowerCase(Locale.ROOT).contains(q))
+                        || (r.date != null && r.date.contains(q))
+                        || (period != null && PhotoColumns.dayKey(r.date) >= period[0]
+                                && PhotoColumns.dayKey(r.date) < period[1]);
+            }
+        };
+    }
+
+// Helpers
+
+    static int today() {
+        Calendar c = Calendar.getInstance();
+        return c.get(Calendar.YEAR) * 10000 + (c.get(Calendar.MONTH) + 1) * 100 + c.get(Calendar.DAY_OF_MONTH);
+    }
+
+    // yyyyMMdd n days before day
+    private static int daysBefore(int day, int n) {
+        Calendar c = Calendar.getInstance();
+        c.clear();
+        c.set(day / 10000, day / 100 % 100 - 1, day % 100);
+        c.add(Calendar.DAY_OF_MONTH, -n);
+        return c.get(Calendar.YEAR) * 10000 + (c.get(Calendar.MONTH) + 1) * 100 + c.get(Calendar.DAY_OF_MONTH);
+    }
+
+    // parent folder name of a file path
+    private static String folderOf(String path) {
+        int slash = path.lastIndexOf('/');
+        return slash <= 0 ? "" : path.substring(path.lastIndexOf('/', slash - 1) + 1, slash);
+    }
+
+    // "2024" / "2024-03" / "2024-03-09" -> first day key, or (upper) the first key after the period
+    private static int dayBound(String s, boolean upper) {
+        try {
+            String[] parts = s.split("-");
+            int y = Integer.parseInt(parts[0]);
+            if (parts.length == 1) return upper ? (y + 1) * 10000 : y * 10000;
+            int m = Integer.parseInt(parts[1]);
+            if (parts.length == 2) return upper ? y * 10000 + (m + 1) * 100 : y * 10000 + m * 100;
+            int d = Integer.parseInt(parts[2]);
+            return y * 10000 + m * 100 + d + (upper ? 1 : 0);
+        } catch (Exception e) {
+            return upper ? 0 : Integer.MAX_VALUE; // empty range
+        }
+    }
+
+    private static String keyOf(String token) {
+        int colon = token.indexOf(':');
+        if (colon <= 0) return null;
+        String key = token.substring(0, colon).toLowerCase(Locale.ROOT);
+        if (key.equals("tag") || key.equals("fav") || key.equals("date") || key.equals("folder")
+                || key.equals("recent")) return key;
+        return null;
+    }
+
+    private static String unquote(String s) {
+        if (s.length() >= 2 && s.startsWith("\"") && s.endsWith("\"")) return s.substring(1, s.length() - 1);
+        return s;
+    }
+
+    // whitespace-separated; "quoted parts" (also after key:) may contain spaces
+    private static List<String> tokenize(String s) {
+        List<String> out = new ArrayList<>();
+        if (s == null) return out;
+        StringBuilder cur = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            if (ch == '"') quoted = !quoted;
+            if (Character.isWhitespace(ch) && !quoted) {
+                if (cur.length() > 0) out.add(cur.toString());
+                cur.setLength(0);
+            } else {
+                cur.append(ch);
+            }
+        }
+        if (cur.length() > 0) out.add(cur.toString());
+        return out;
+    }
+}
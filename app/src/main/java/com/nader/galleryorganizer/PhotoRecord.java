@@ -0,0 +1,30 @@
+package com.nader.galleryorganizer;
+
+// Immutable stored metadata for one photo; PhotoStore swaps in a new instance on every change.
+public final class PhotoRecord {
+    public final String path;
+    public final String tags;
+    public final String date; // yyyy-MM-dd
+    public final long ts;     // ms
+    public final boolean favorite;
+
+    public PhotoRecord(String path, String tags, String date, long ts, boolean favorite) {
+        this.path = path;
+        this.tags = tags == null ? "" : tags;
+        this.date = date == null ? "" : date;
+        this.ts = ts;
+        this.favorite = favorite;
+    }
+
+    public PhotoRecord withPath(String newPath) {
+        return new PhotoRecord(newPath, tags, date, ts, favorite);
+    }
+
+    public PhotoRecord withTags(String newTags) {
+        return new PhotoRecord(path, newTags, date, ts, favorite);
+    }
+
+    public PhotoRecord withFavorite(boolean newFavorite) {
+        return new PhotoRecord(path, tags, date, ts, newFavorite);
+    }
+}
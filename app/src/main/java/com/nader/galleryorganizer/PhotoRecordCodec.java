@@ -0,0 +1,281 @@
+package com.nader.galleryorganizer;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+// Compact binary encoding of PhotoRecord streams (used by the metadata journal).
+//
+// Stream: "GOPR" + version byte, then records:
+//   TAG    0x01 len-prefixed utf8                    -> defines the next tag id (0, 1, 2...)
+//   PUT    0x02 path, varint tagCount, varint tagId*, long ts, byte flags, date
+//   DELETE 0x03 path
+//   RESET  0x04                                      -> forget tag ids and the previous path
+// Strings are varint byte length + UTF-8. Paths are front-coded against the previous path
+// (varint shared prefix chars + suffix string). Flags: bit0 favorite, bit1 date packed as
+// varint yyyyMMdd (otherwise the date follows as a string).
+final class PhotoRecordCodec {
+    static final int VERSION = 1;
+    private static final byte[] MAGIC = {'G', 'O', 'P', 'R'};
+
+    static final int PUT = 0x02;
+    static final int DELETE = 0x03;
+    private static final int TAG = 0x01;
+    private static final int RESET = 0x04;
+
+    private static final int FLAG_FAVORITE = 1;
+    private static final int FLAG_DATE_PACKED = 2;
+
+    private PhotoRecordCodec() {}
+
+    static final class Writer {
+        private final OutputStream out;
+        private final HashMap<String, Integer> tagIds = new HashMap<>();
+        private String lastPath = "";
+        private final byte[] scratch = new byte[10];
+
+        Writer(OutputStream out) {
+            this.out = out;
+        }
+
+        void writeHeader() throws IOException {
+            out.write(MAGIC);
+            out.write(VERSION);
+        }
+
+        // Starts a fresh dictionary, e.g. when appending to a stream written by an earlier process.
+        void reset() throws IOException {
+            out.write(RESET);
+            tagIds.clear();
+            lastPath = "";
+        }
+
+        void put(PhotoRecord r) throws IOException {
+            String[] tags = splitTags(r.tags);
+            int[] ids = new int[tags.length];
+            for (int i = 0; i < tags.length; i++) {
+                Integer id = tagIds.get(tags[i]);
+                if (id == null) {
+                    id = tagIds.size();
+                    tagIds.put(tags[i], id);
+                    out.write(TAG);
+                    writeString(tags[i]);
+                }
+                ids[i] = id;
+            }
+            out.write(PUT);
+            writePath(r.path);
+            writeVarint(ids.length);
+            for (int id : ids) writeVarint(id);
+            writeLong(r.ts);
+            int packed = packDate(r.date);
+            out.write((r.favorite ? FLAG_FAVORITE : 0) | (packed >= 0 ? FLAG_DATE_PACKED : 0));
+            if (packed >= 0) writeVarint(packed);
+            else writeString(r.date);
+        }
+
+        void delete(String path) throws IOException {
+            out.write(DELETE);
+            writePath(path);
+        }
+
+        void flush() throws IOException {
+            out.flush();
+        }
+
+        private void writePath(String path) throws IOException {
+            int shared = 0;
+            int max = Math.min(path.length(), lastPath.length());
+            while (shared < max && path.charAt(shared) == lastPath.charAt(shared)) shared++;
+            // never split a surrogate pair: a lone half would not survive the UTF-8 suffix
+            if (shared > 0 && Character.isHighSurrogate(path.charAt(shared - 1))) shared--;
+            writeVarint(shared);
+            writeString(path.substring(shared));
+            lastPath = path;
+        }
+
+        private void writeString(String s) throws IOException {
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            writeVarint(b.length);
+            out.write(b);
+        }
+
+        private void writeVarint(int v) throws IOException {
+            int n = 0;
+            while ((v & ~0x7F) != 0) {
+                scratch[n++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            scratch[n++] = (byte) v;
+            out.write(scratch, 0, n);
+        }
+
+        private void writeLong(long v) throws IOException {
+            for (int i = 7; i >= 0; i--) scratch[7 - i] = (byte) (v >>> (i * 8));
+            out.write(scratch, 0, 8);
+        }
+    }
+
+    static final class Reader {
+        private final InputStream in;
+        private final ArrayList<String> tags = new ArrayList<>();
+        private String lastPath = "";
+        private long position;
+        private byte[] buf = new byte[256];
+
+        // Valid after next() returned PUT (record) or DELETE (path).
+        PhotoRecord record;
+        String path;
+
+        Reader(InputStream in) {
+            this.in = in;
+        }
+
+        // false if the stream is empty or was not written by this codec
+        boolean readHeader() throws IOException {
+            for (byte m : MAGIC) {
+                int b = in.read();
+                if (b != m) return false;
+                position++;
+            }
+            int version = in.read();
+            if (version < 0 || version > VERSION) return false;
+            position++;
+            return true;
+        }
+
+        // Returns PUT, DELETE or -1 at end of stream; throws EOFException on a torn record.
+        int next() throws IOException {
+            while (true) {
+                int op = in.read();
+                if (op < 0) return -1;
+                long start = position;
+                position++;
+                switch (op) {
+                    case TAG:
+                        tags.add(readString());
+                        break;
+                    case RESET:
+                        tags.clear();
+                        lastPath = "";
+                        break;
+                    case PUT: {
+                        String p = readPath();
+                        int count = readVarint();
+                        StringBuilder sb = new StringBuilder();
+                        for (int i = 0; i < count; i++) {
+                            int id = readVarint();
+                            if (id >= tags.size()) throw new IOException("Unknown tag id " + id + " at " + start);
+                            if (i > 0) sb.append(',');
+                            sb.append(tags.get(id));
+                        }
+                        long ts = readLong();
+                        int flags = readByte();
+                        String date = (flags & FLAG_DATE_PACKED) != 0 ? unpackDate(readVarint()) : readString();
+                        record = new PhotoRecord(p, sb.toString(), date, ts, (flags & FLAG_FAVORITE) != 0);
+                        return PUT;
+                    }
+                    case DELETE:
+                        path = readPath();
+                        return DELETE;
+                    default:
+                        throw new IOException("Bad record type " + op + " at " + start);
+                }
+            }
+        }
+
+        // Bytes consumed through the end of the last complete record.
+        long position() {
+            return position;
+        }
+
+        private String readPath() throws IOException {
+            int shared = readVarint();
+            if (shared > lastPath.length()) throw new IOException("Bad path prefix at " + position);
+            String p = lastPath.substring(0, shared) + readString();
+            lastPath = p;
+            return p;
+        }
+
+        private String readString() throws IOException {
+            int len = readVarint();
+            if (buf.length < len) buf = new byte[Math.max(len, buf.length * 2)];
+            int off = 0;
+            while (off < len) {
+                int n = in.read(buf, off, len - off);
+                if (n < 0) throw new EOFException();
+                off += n;
+            }
+            position += len;
+            return new String(buf, 0, len, StandardCharsets.UTF_8);
+        }
+
+        private int readVarint() throws IOException {
+            int v = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                v |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return v;
+            }
+            throw new IOException("Malformed varint at " + position);
+        }
+
+        private long readLong() throws IOException {
+            long v = 0;
+            for (int i = 0; i < 8; i++) v = (v << 8) | readByte();
+            return v;
+        }
+
+        private int readByte() throws IOException {
+            int b = in.read();
+            if (b < 0) throw new EOFException();
+            position++;
+            return b;
+        }
+    }
+
+// Helpers
+
+    // "a,b , c" -> ["a", "b ", " c"]; tokens are kept verbatim so joining with ',' round-trips
+    private static String[] splitTags(String tags) {
+        if (tags == null || tags.isEmpty()) return new String[0];
+        ArrayList<String> out = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i <= tags.length(); i++) {
+            if (i == tags.length() || tags.charAt(i) == ',') {
+                out.add(tags.substring(start, i));
+                start = i + 1;
+            }
+        }
+        return out.toArray(new String[0]);
+    }
+
+    // "2024-03-09" -> 20240309, anything else -> -1
+    private static int packDate(String date) {
+        if (date == null || date.length() != 10 || date.charAt(4) != '-' || date.charAt(7) != '-') return -1;
+        int v = 0;
+        for (int i = 0; i < 10; i++) {
+            if (i == 4 || i == 7) continue;
+            char c = date.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            v = v * 10 + (c - '0');
+        }
+        return v;
+    }
+
+    private static String unpackDate(int v) {
+        char[] c = new char[10];
+        c[4] = '-';
+        c[7] = '-';
+        for (int i = 9; i >= 0; i--) {
+            if (i == 4 || i == 7) continue;
+            c[i] = (char) ('0' + v % 10);
+            v /= 10;
+        }
+        return new String(c);
+    }
+}
@@ -1,207 +1,434 @@
 package com.nader.galleryorganizer;
 
+import android.content.ContentValues;
+import android.content.Context;
 import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
 
-import org.json.JSONArray;
-
+import java.io.File;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.nader.galleryorganizer.PhotoDbHelper.COL_DATE;
+import static com.nader.galleryorganizer.PhotoDbHelper.COL_FAVORITE;
+import static com.nader.galleryorganizer.PhotoDbHelper.COL_PATH;
+import static com.nader.galleryorganizer.PhotoDbHelper.COL_TAGS;
+import static com.nader.galleryorganizer.PhotoDbHelper.COL_TS;
+import static com.nader.galleryorganizer.PhotoDbHelper.TABLE;
 
 public class PhotoStore {
+    // Legacy prefs key: JSON array of "path|tags|date(yyyy-MM-dd)|ts(ms)|favorite(true/false)|"
+    // Older entries might be: path||date|ts|false|
+    // Migrated once into photos.db and then removed from prefs.
     public static final String KEY = "photos";
-    // Format: path|tags|date(yyyy-MM-dd)|ts(ms)|favorite(true/false)|
-// Older entries might be: path||date|ts|false|
+
+    // Changes within this window are appended to the journal as one write.
+    private static final long FLUSH_DELAY_MS = 250;
+    // Once the journal grows past this, its paths are folded into photos.db and the journal is reset.
+    private static final long COMPACT_THRESHOLD_BYTES = 64 * 1024;
+
+    private static PhotoDbHelper helper;
+    private static PhotoJournal journal;
+
+    // Process-wide cache: photos.db snapshot + journal replay, loaded on first use.
+    // Disk is only written from the writer thread.
+    private static final HashMap<String, PhotoRecord> cache = new HashMap<>();
+    private static final TreeSet<String> pathIndex = new TreeSet<>();                 // cache keys, sorted for prefix ranges
+    private static final TagIndex tagIndex = new TagIndex();                          // tag id -> photo bitset
+    private static final HashMap<String, SmartAlbum> albums = new HashMap<>();        // query -> materialized members
+    private static boolean loaded;
+    private static final LinkedHashSet<String> dirty = new LinkedHashSet<>();        // not yet journaled
+    private static final HashSet<String> uncompacted = new HashSet<>();               // journaled, not yet in photos.db
+    private static boolean flushScheduled;
+    private static final HashSet<String> changed = new HashSet<>();                   // not yet published to MetadataRepository
+    private static final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "PhotoStore-writer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public static synchronized void init(Context context) {
+        if (helper == null) helper = new PhotoDbHelper(context);
+        if (journal == null) journal = new PhotoJournal(new File(context.getFilesDir(), "photos.journal"));
+    }
 
     public static synchronized void addNew(SharedPreferences prefs, String path, String tags, boolean favorite) {
-        try {
-            JSONArray arr = load(prefs);
-            int idx = indexOf(arr, path);
-            if (idx >= 0) {
-                String[] p = parse(arr.getString(idx));
-                String newTags = (tags != null && !tags.trim().isEmpty()) ? tags.trim() : p[1];
-                String newFav = favorite ? "true" : p[4];
-                arr.put(idx, build(path, newTags, p[2], p[3], newFav));
-            } else {
-                String date = today();
-                String ts = String.valueOf(System.currentTimeMillis());
-                arr.put(build(path, safe(tags), date, ts, favorite ? "true" : "false"));
-            }
-            save(prefs, arr);
-        } catch (Exception e) {
-            // last resort simple append (avoid duplicates if detected)
-            String json = prefs.getString(KEY, "[]");
-            if (json != null && json.contains("\"" + path + "|")) return;
-            String entry = path + "|" + safe(tags) + "|" + today() + "|" + System.currentTimeMillis() + "|" + (favorite ? "true" : "false") + "|";
-            if ("[]".equals(json)) json = "[\"" + entry + "\"]";
-            else json = json.substring(0, json.length() - 1) + ",\"" + entry + "\"]";
-            prefs.edit().putString(KEY, json).apply();
-        }
+        ensureLoaded(prefs);
+        doAddNew(path, tags, favorite);
+        publish();
     }
 
     public static synchronized void setTags(SharedPreferences prefs, String path, String tags) {
-        try {
-            JSONArray arr = load(prefs);
-            int idx = indexOf(arr, path);
-            if (idx >= 0) {
-                String[] p = parse(arr.getString(idx));
-                arr.put(idx, build(p[0], safe(tags), p[2], p[3], p[4]));
-            } else {
-                String date = today();
-                String ts = String.valueOf(System.currentTimeMillis());
-                arr.put(build(path, safe(tags), date, ts, "false"));
-            }
-            save(prefs, arr);
-        } catch (Exception e) {
-            String json = prefs.getString(KEY, "[]");
-            if (json.contains(path + "||")) {
-                json = json.replace(path + "||", path + "|" + safe(tags) + "|");
-                prefs.edit().putString(KEY, json).apply();
-            } else {
-                addNew(prefs, path, tags, false);
-            }
-        }
+        ensureLoaded(prefs);
+        doSetTags(path, tags);
+        publish();
     }
 
     public static synchronized void setFavorite(SharedPreferences prefs, String path, boolean favorite) {
-        try {
-            JSONArray arr = load(prefs);
-            int idx = indexOf(arr, path);
-            if (idx >= 0) {
-                String[] p = parse(arr.getString(idx));
-                arr.put(idx, build(p[0], p[1], p[2], p[3], favorite ? "true" : "false"));
-            } else {
-                String date = today();
-                String ts = String.valueOf(System.currentTimeMillis());
-                arr.put(build(path, "", date, ts, favorite ? "true" : "false"));
-            }
-            save(prefs, arr);
-        } catch (Exception e) {
-            String json = prefs.getString(KEY, "[]");
-            String tokenStart = "\"" + path + "|";
-            int i = json.indexOf(tokenStart);
-            if (i >= 0) {
-                int j = json.indexOf("\"", i + 1);
-                if (j > i) {
-                    String token = json.substring(i + 1, j);
-                    String[] p = parse(token);
-                    String normalized = build(p[0], p[1], p[2], p[3], favorite ? "true" : "false");
-                    json = json.substring(0, i + 1) + normalized + json.substring(j);
-                    prefs.edit().putString(KEY, json).apply();
-                }
-            } else {
-                addNew(prefs, path, "", favorite);
-            }
-        }
+        ensureLoaded(prefs);
+        doSetFavorite(path, favorite);
+        publish();
     }
 
     public static synchronized void replacePath(SharedPreferences prefs, String oldPath, String newPath) {
-        try {
-            JSONArray arr = load(prefs);
-            int idx = indexOf(arr, oldPath);
-            if (idx >= 0) {
-                String[] p = parse(arr.getString(idx));
-                arr.put(idx, build(newPath, p[1], p[2], p[3], p[4]));
-                save(prefs, arr);
-                return;
-            }
-            String json = prefs.getString(KEY, "[]");
-            json = json.replace(oldPath, newPath);
-            prefs.edit().putString(KEY, json).apply();
-        } catch (Exception e) {
-            String json = prefs.getString(KEY, "[]");
-            json = json.replace(oldPath, newPath);
-            prefs.edit().putString(KEY, json).apply();
-        }
+        ensureLoaded(prefs);
+        doReplacePath(oldPath, newPath);
+        publish();
+    }
+
+    // Moves the metadata of a folder and everything below it (folder rename/move on legacy storage):
+    // "/a/Trip" -> "/b/Trip" rewrites "/a/Trip/x.jpg" but not "/a/Trip2/x.jpg".
+    public static synchronized void replacePathPrefix(SharedPreferences prefs, String oldPrefix, String newPrefix) {
+        ensureLoaded(prefs);
+        doReplacePathPrefix(oldPrefix, newPrefix);
+        publish();
     }
 
     public static synchronized void removeByExactPath(SharedPreferences prefs, String path) {
-        try {
-            JSONArray arr = load(prefs);
-            JSONArray out = new JSONArray();
-            for (int i = 0; i < arr.length(); i++) {
-                String s = arr.getString(i);
-                if (s != null && s.startsWith(path + "|")) continue;
-                out.put(s);
+        ensureLoaded(prefs);
+        doRemove(path);
+        publish();
+    }
+
+    // Drops a folder and everything below it, with the same boundary rule as replacePathPrefix.
+    public static synchronized void removeByPrefix(SharedPreferences prefs, String prefix) {
+        ensureLoaded(prefs);
+        doRemoveByPrefix(prefix);
+        publish();
+    }
+
+    public static synchronized boolean exists(SharedPreferences prefs, String path) {
+        ensureLoaded(prefs);
+        return path != null && cache.containsKey(path);
+    }
+
+    public static synchronized PhotoRecord get(SharedPreferences prefs, String path) {
+        ensureLoaded(prefs);
+        return path == null ? null : cache.get(path);
+    }
+
+    // Autocomplete: up to limit existing tags starting with prefix, most used first.
+    public static synchronized List<String> suggestTags(SharedPreferences prefs, String prefix, int limit) {
+        ensureLoaded(prefs);
+        return tagIndex.trie().suggest(prefix, limit);
+    }
+
+    // Paths matching a TagFilter expression, e.g. "work AND receipts NOT 2023".
+    public static synchronized HashSet<String> filterByTags(SharedPreferences prefs, String expression) {
+        ensureLoaded(prefs);
+        return tagIndex.toPaths(TagFilter.parse(expression).evaluate(tagIndex));
+    }
+
+    // Paths of the stored photos matching a smart album query, newest first. The first call for a query
+    // materializes it in one pass; put()/remove() keep it current afterwards, so later calls are O(result).
+    // media resolves the name and folder of content:// records for folder: and free-text terms.
+    public static synchronized List<String> album(SharedPreferences prefs, String query, PhotoQuery.MediaNames media) {
+        ensureLoaded(prefs);
+        int today = PhotoQuery.today();
+        SmartAlbum a = albums.get(query);
+        if (a == null) {
+            albums.put(query, a = new SmartAlbum(PhotoQuery.parse(query), today, media));
+            for (PhotoRecord r : cache.values()) a.update(tagIndex.ordinal(r.path), r);
+        } else if (a.day != today && a.query.isRelative()) {
+            a.day = today;
+            BitSet members = a.members;
+            for (int i = members.nextSetBit(0); i >= 0; i = members.nextSetBit(i + 1)) {
+                a.update(i, cache.get(tagIndex.path(i)));
             }
-            save(prefs, out);
-        } catch (Exception e) {
-            String json = prefs.getString(KEY, "[]");
-            String tokenStart = "\"" + path + "|";
-            int i = json.indexOf(tokenStart);
-            if (i >= 0) {
-                int j = json.indexOf("\"", i + 1);
-                if (j > i) {
-                    String token = json.substring(i, j + 1);
-                    json = json.replace(token, "").replace(",,", ",").replace("[,", "[").replace(",]", "]");
-                    if (json.trim().isEmpty()) json = "[]";
-                    prefs.edit().putString(KEY, json).apply();
-                }
+        }
+        List<PhotoRecord> hits = new ArrayList<>(a.members.cardinality());
+        for (int i = a.members.nextSetBit(0); i >= 0; i = a.members.nextSetBit(i + 1)) {
+            hits.add(cache.get(tagIndex.path(i)));
+        }
+        Collections.sort(hits, (x, y) -> Long.compare(y.ts, x.ts));
+        List<String> out = new ArrayList<>(hits.size());
+        for (PhotoRecord r : hits) out.add(r.path);
+        return out;
+    }
+
+    // Stops maintaining a query's members once no saved album uses it.
+    public static synchronized void dropAlbum(String query) {
+        albums.remove(query);
+    }
+
+    // path -> metadata (tags/date/favorite) for every stored photo
+    public static synchronized HashMap<String, PhotoRecord> loadAll(SharedPreferences prefs) {
+        ensureLoaded(prefs);
+        // records are immutable, so the copy shares them instead of building one object per photo
+        return new HashMap<>(cache);
+    }
+
+    // Bulk edits: queue any number of mutations, then apply() them together under one lock and one flush.
+    public static Editor edit(SharedPreferences prefs) {
+        return new Editor(prefs);
+    }
+
+    public static final class Editor {
+        private final SharedPreferences prefs;
+        private final List<Runnable> ops = new ArrayList<>();
+
+        private Editor(SharedPreferences prefs) { this.prefs = prefs; }
+
+        public Editor addNew(String path, String tags, boolean favorite) { ops.add(() -> doAddNew(path, tags, favorite)); return this; }
+        public Editor setTags(String path, String tags) { ops.add(() -> doSetTags(path, tags)); return this; }
+        public Editor setFavorite(String path, boolean favorite) { ops.add(() -> doSetFavorite(path, favorite)); return this; }
+        public Editor replacePath(String oldPath, String newPath) { ops.add(() -> doReplacePath(oldPath, newPath)); return this; }
+        public Editor replacePathPrefix(String oldPrefix, String newPrefix) { ops.add(() -> doReplacePathPrefix(oldPrefix, newPrefix)); return this; }
+        public Editor removeByExactPath(String path) { ops.add(() -> doRemove(path)); return this; }
+
+        public void apply() {
+            if (ops.isEmpty()) return;
+            synchronized (PhotoStore.class) {
+                ensureLoaded(prefs);
+                for (Runnable op : ops) op.run();
+                publish();
             }
+            ops.clear();
         }
     }
 
-    public static synchronized boolean exists(SharedPreferences prefs, String path) {
-        try {
-            JSONArray arr = load(prefs);
-            return indexOf(arr, path) >= 0;
-        } catch (Exception e) {
-            String json = prefs.getString(KEY, "[]");
-            return json != null && (json.contains("\"" + path + "|") || json.contains("\"" + path + "||"));
+// Mutations; callers hold the PhotoStore lock and have called ensureLoaded()
+
+    private static void doAddNew(String path, String tags, boolean favorite) {
+        if (path == null) return;
+        PhotoRecord r = cache.get(path);
+        if (r != null) {
+            String newTags = (tags != null && !tags.trim().isEmpty()) ? tags.trim() : r.tags;
+            put(new PhotoRecord(path, newTags, r.date, r.ts, favorite || r.favorite));
+        } else {
+            put(newRecord(path, tags, favorite));
         }
     }
 
+    private static void doSetTags(String path, String tags) {
+        if (path == null) return;
+        PhotoRecord r = cache.get(path);
+        put(r != null ? r.withTags(safe(tags)) : newRecord(path, tags, false));
+    }
+
+    private static void doSetFavorite(String path, boolean favorite) {
+        if (path == null) return;
+        PhotoRecord r = cache.get(path);
+        put(r != null ? r.withFavorite(favorite) : newRecord(path, "", favorite));
+    }
+
+    private static void doReplacePath(String oldPath, String newPath) {
+        if (oldPath == null || newPath == null || oldPath.equals(newPath)) return;
+        PhotoRecord r = remove(oldPath);
+        if (r != null) put(r.withPath(newPath));
+    }
+
+    private static void doReplacePathPrefix(String oldPrefix, String newPrefix) {
+        if (oldPrefix == null || oldPrefix.isEmpty() || newPrefix == null || oldPrefix.equals(newPrefix)) return;
+        List<PhotoRecord> moved = new ArrayList<>();
+        for (String path : pathsUnder(oldPrefix)) moved.add(remove(path));
+        for (PhotoRecord r : moved) put(r.withPath(newPrefix + r.path.substring(oldPrefix.length())));
+    }
+
+    private static void doRemove(String path) {
+        if (path != null) remove(path);
+    }
+
+    private static void doRemoveByPrefix(String prefix) {
+        if (prefix == null || prefix.isEmpty()) return;
+        for (String path : pathsUnder(prefix)) remove(path);
+    }
+
 // Helpers
 
-    private static JSONArray load(SharedPreferences prefs) {
+    private static void put(PhotoRecord r) {
+        String tags = tagIndex.dictionary().internTags(r.tags);
+        if (tags != r.tags) r = r.withTags(tags);
+        PhotoRecord old = cache.put(r.path, r);
+        if (old == null) pathIndex.add(r.path);
+        tagIndex.add(r);
+        int ord = tagIndex.ordinal(r.path);
+        for (SmartAlbum a : albums.values()) a.update(ord, r);
+        changed.add(r.path);
+        markDirty(r.path);
+    }
+
+    private static PhotoRecord remove(String path) {
+        PhotoRecord r = cache.remove(path);
+        if (r != null) {
+            pathIndex.remove(path);
+            int ord = tagIndex.ordinal(path);
+            for (SmartAlbum a : albums.values()) a.remove(ord);
+            tagIndex.remove(r);
+            changed.add(path);
+            markDirty(path);
+        }
+        return r;
+    }
+
+
+    // prefix itself plus everything below it as a folder: "/a/b" matches "/a/b" and "/a/b/x", not "/a/bc"
+    private static List<String> pathsUnder(String prefix) {
+        String base = prefix.endsWith("/") ? prefix.substring(0, prefix.length() - 1) : prefix;
+        // every path starting with base + '/' sorts in [base + '/', base + ('/' + 1))
+        List<String> out = new ArrayList<>(pathIndex.subSet(base + '/', base + (char) ('/' + 1)));
+        if (!prefix.endsWith("/") && pathIndex.contains(prefix)) out.add(prefix);
+        return out;
+    }
+
+    private static void markDirty(String path) {
+        dirty.add(path);
+        if (flushScheduled) return;
+        flushScheduled = true;
+        writer.schedule(PhotoStore::flush, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private static void publish() {
+        if (changed.isEmpty()) return;
+        HashMap<String, PhotoRecord> records = new HashMap<>(changed.size() * 2);
+        for (String path : changed) records.put(path, cache.get(path)); // null = removed
+        MetadataRepository.getInstance().onStoreChanged(records);
+        changed.clear();
+    }
+
+    // Runs on the writer thread: appends the current cached state of every dirty path to the journal.
+    private static void flush() {
+        List<String> paths;
+        List<PhotoRecord> records;
+        synchronized (PhotoStore.class) {
+            flushScheduled = false;
+            if (dirty.isEmpty()) return;
+            paths = new ArrayList<>(dirty);
+            records = new ArrayList<>(paths.size());
+            for (String p : paths) records.add(cache.get(p));
+            dirty.clear();
+            uncompacted.addAll(paths);
+        }
         try {
-            return new JSONArray(prefs.getString(KEY, "[]"));
+            journal.append(paths, records);
         } catch (Exception e) {
-            return new JSONArray();
+            // keep the paths dirty so the next flush retries them
+            synchronized (PhotoStore.class) {
+                for (String p : paths) markDirty(p);
+            }
+            return;
         }
+        if (journal.length() > COMPACT_THRESHOLD_BYTES) compact();
     }
 
-    private static void save(SharedPreferences prefs, JSONArray arr) {
-        prefs.edit().putString(KEY, arr.toString()).apply();
+    // Runs on the writer thread: writes every journaled path into photos.db in one transaction, then resets the journal.
+    private static void compact() {
+        List<String> paths;
+        List<PhotoRecord> records;
+        synchronized (PhotoStore.class) {
+            if (uncompacted.isEmpty()) return;
+            paths = new ArrayList<>(uncompacted);
+            records = new ArrayList<>(paths.size());
+            for (String p : paths) records.add(cache.get(p));
+            uncompacted.clear();
+        }
+        try {
+            SQLiteDatabase db = helper.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                ContentValues cv = new ContentValues();
+                for (int i = 0; i < paths.size(); i++) {
+                    PhotoRecord r = records.get(i);
+                    if (r == null) {
+                        db.delete(TABLE, COL_PATH + " = ?", new String[]{paths.get(i)});
+                        continue;
+                    }
+                    cv.clear();
+                    cv.put(COL_PATH, r.path);
+                    cv.put(COL_TAGS, r.tags);
+                    cv.put(COL_DATE, r.date);
+                    cv.put(COL_TS, r.ts);
+                    cv.put(COL_FAVORITE, r.favorite ? 1 : 0);
+                    db.insertWithOnConflict(TABLE, null, cv, SQLiteDatabase.CONFLICT_REPLACE);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            // Records written to photos.db may be newer than the journal; anything changed since is
+            // still dirty and gets journaled again by the next flush.
+            journal.truncate();
+        } catch (Exception e) {
+            synchronized (PhotoStore.class) {
+                uncompacted.addAll(paths);
+            }
+        }
     }
 
-    private static int indexOf(JSONArray arr, String path) {
-        if (path == null) return -1;
-        for (int i = 0; i < arr.length(); i++) {
-            try {
-                String s = arr.getString(i);
-                if (s != null && s.startsWith(path + "|")) return i;
-            } catch (Exception ignored) {
+    private static void ensureLoaded(SharedPreferences prefs) {
+        if (loaded) return;
+        if (helper == null) throw new IllegalStateException("PhotoStore.init() not called");
+        // A failed open or migration propagates with nothing kept, so the next call retries instead of the
+        // store passing for an untagged library and journaling writes over an empty baseline.
+        try {
+            SQLiteDatabase db = helper.getWritableDatabase();
+            if (prefs != null && prefs.contains(KEY)) migrateFromPrefs(db, prefs);
+            try (Cursor c = db.query(TABLE, new String[]{COL_PATH, COL_TAGS, COL_DATE, COL_TS, COL_FAVORITE},
+                    null, null, null, null, null)) {
+                while (c.moveToNext()) {
+                    PhotoRecord r = new PhotoRecord(c.getString(0), c.getString(1), c.getString(2),
+                            c.getLong(3), c.getInt(4) != 0);
+                    cache.put(r.path, r);
+                    pathIndex.add(r.path);
+                }
             }
+        } catch (RuntimeException e) {
+            cache.clear();
+            pathIndex.clear();
+            throw e;
+        }
+        journal.replay(new PhotoJournal.Sink() {
+            @Override public void put(PhotoRecord r) { cache.put(r.path, r); pathIndex.add(r.path); uncompacted.add(r.path); }
+            @Override public void delete(String path) { cache.remove(path); pathIndex.remove(path); uncompacted.add(path); }
+        });
+        for (Map.Entry<String, PhotoRecord> e : cache.entrySet()) {
+            PhotoRecord r = e.getValue();
+            String tags = tagIndex.dictionary().internTags(r.tags);
+            if (tags != r.tags) e.setValue(r = r.withTags(tags));
+            tagIndex.add(r);
         }
-        return -1;
-    }
-
-    private static String[] parse(String entry) {
-        String[] raw = entry.split("\\|", -1);
-        String path = raw.length > 0 ? raw[0] : "";
-        String tags = "";
-        String date = today();
-        String ts = String.valueOf(System.currentTimeMillis());
-        String fav = "false";
-
-        if (raw.length >= 5) {
-            tags = safe(raw[1]);
-            date = safe(raw[2]).isEmpty() ? today() : raw[2];
-            ts = safe(raw[3]).isEmpty() ? String.valueOf(System.currentTimeMillis()) : raw[3];
-            fav = "true".equals(raw[4]) ? "true" : "false";
-        } else if (raw.length >= 4) {
-            // legacy path||date|ts|fav?
-            tags = "";
-            date = safe(raw[1]).isEmpty() ? today() : raw[1];
-            ts = safe(raw[2]).isEmpty() ? String.valueOf(System.currentTimeMillis()) : raw[2];
-            fav = (raw.length > 3 && "true".equals(raw[3])) ? "true" : "false";
+        loaded = true;
+    }
+
+    // One-time import of the old pipe-delimited JSON store; first entry wins on duplicates (old indexOf semantics).
+    private static void migrateFromPrefs(SQLiteDatabase db, SharedPreferences prefs) {
+        db.beginTransaction();
+        try {
+            LegacyMetaReader reader = new LegacyMetaReader(prefs.getString(KEY, "[]"));
+            ContentValues cv = new ContentValues();
+            PhotoRecord r;
+            while ((r = reader.next()) != null) {
+                cv.clear();
+                cv.put(COL_PATH, r.path);
+                cv.put(COL_TAGS, r.tags);
+                cv.put(COL_DATE, r.date);
+                cv.put(COL_TS, r.ts);
+                cv.put(COL_FAVORITE, r.favorite ? 1 : 0);
+                db.insertWithOnConflict(TABLE, null, cv, SQLiteDatabase.CONFLICT_IGNORE);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
         }
-        return new String[]{path, tags, date, ts, fav};
+        prefs.edit().remove(KEY).commit();
     }
 
-    private static String build(String path, String tags, String date, String ts, String fav) {
-        return path + "|" + safe(tags) + "|" + safe(date) + "|" + safe(ts) + "|" + ("true".equals(fav) ? "true" : "false") + "|";
+    private static PhotoRecord newRecord(String path, String tags, boolean favorite) {
+        return new PhotoRecord(path, safe(tags), today(), System.currentTimeMillis(), favorite);
     }
 
     private static String safe(String s) {
@@ -211,4 +438,4 @@ public class PhotoStore {
     private static String today() {
         return new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault()).format(new Date());
     }
-}
\ No newline at end of file
+}
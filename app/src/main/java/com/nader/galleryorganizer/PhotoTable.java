@@ -0,0 +1,89 @@
+package com.nader.galleryorganizer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+// MediaStore columns for the photos on screen, captured in the same cursor pass that lists them
+// (MediaPager / MediaLibrary), so details and bulk copy/move never query MediaStore per photo.
+// Column-wise primitive arrays; folder paths and MIME types are interned into small dictionaries.
+// Filled on the loader thread, read on the main thread.
+final class PhotoTable {
+    private long[] ids = new long[256];
+    private String[] names = new String[256];
+    private int[] folders = new int[256];   // index into folderNames (RELATIVE_PATH)
+    private int[] mimes = new int[256];     // index into mimeNames
+    private long[] sizes = new long[256];
+    private int[] widths = new int[256];
+    private int[] heights = new int[256];
+    private long[] taken = new long[256];   // DATE_TAKEN ms, 0 = unknown
+    private int size;
+
+    private final HashMap<Long, Integer> rowOf = new HashMap<>();
+    private final ArrayList<String> folderNames = new ArrayList<>();
+    private final HashMap<String, Integer> folderIds = new HashMap<>();
+    private final ArrayList<String> mimeNames = new ArrayList<>();
+    private final HashMap<String, Integer> mimeIds = new HashMap<>();
+
+    // Adds or replaces the row for id.
+    synchronized void put(long id, String name, String relPath, String mime, long bytes, int width, int height, long dateTaken) {
+        Integer row = rowOf.get(id);
+        int r;
+        if (row != null) {
+            r = row;
+        } else {
+            r = size++;
+            ensureCapacity(size);
+            rowOf.put(id, r);
+        }
+        ids[r] = id;
+        names[r] = name == null ? "" : name;
+        folders[r] = intern(relPath == null ? "" : relPath, folderNames, folderIds);
+        mimes[r] = intern(mime == null ? "" : mime, mimeNames, mimeIds);
+        sizes[r] = bytes;
+        widths[r] = width;
+        heights[r] = height;
+        taken[r] = dateTaken;
+    }
+
+    // row for a content:// path, or -1 (not loaded through MediaStore, e.g. legacy files)
+    synchronized int find(String path) {
+        if (path == null || !path.startsWith("content://")) return -1;
+        try {
+            Integer row = rowOf.get(Long.parseLong(path.substring(path.lastIndexOf('/') + 1)));
+            return row == null ? -1 : row;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    synchronized long id(int row) { return ids[row]; }
+    synchronized String name(int row) { return names[row]; }
+    synchronized String relPath(int row) { return folderNames.get(folders[row]); }
+    synchronized String mime(int row) { return mimeNames.get(mimes[row]); }
+    synchronized long size(int row) { return sizes[row]; }
+    synchronized int width(int row) { return widths[row]; }
+    synchronized int height(int row) { return heights[row]; }
+    synchronized long dateTaken(int row) { return taken[row]; }
+
+    private static int intern(String s, ArrayList<String> names, HashMap<String, Integer> ids) {
+        Integer id = ids.get(s);
+        if (id != null) return id;
+        ids.put(s, names.size());
+        names.add(s);
+        return names.size() - 1;
+    }
+
+    private void ensureCapacity(int n) {
+        if (n <= ids.length) return;
+        int cap = Math.max(n, ids.length * 2);
+        ids = Arrays.copyOf(ids, cap);
+        names = Arrays.copyOf(names, cap);
+        folders = Arrays.copyOf(folders, cap);
+        mimes = Arrays.copyOf(mimes, cap);
+        sizes = Arrays.copyOf(sizes, cap);
+        widths = Arrays.copyOf(widths, cap);
+        heights = Arrays.copyOf(heights, cap);
+        taken = Arrays.copyOf(taken, cap);
+    }
+}
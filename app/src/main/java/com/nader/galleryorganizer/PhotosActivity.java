@@ -15,8 +15,10 @@ import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Environment;
+import android.os.SystemClock;
 import android.provider.MediaStore;
 import android.widget.EditText;
+import android.widget.MultiAutoCompleteTextView;
 import android.widget.SearchView;
 import android.widget.Toast;
 
@@ -28,14 +30,18 @@ import androidx.core.content.FileProvider;
 import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
-import org.json.JSONArray;
-
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 @SuppressWarnings("deprecation")
 public class PhotosActivity extends AppCompatActivity {
@@ -47,8 +53,15 @@ public class PhotosActivity extends AppCompatActivity {
     private ImprovedPhotoAdapter adapter;
     private final List<PhotoInfo> allPhotos = new ArrayList<>();
     private final List<PhotoInfo> selectedPhotos = new ArrayList<>();
+    private final MetadataRepository.Listener metaListener = this::onMetadataChanged;
     private SharedPreferences prefs;
     private SearchView searchView;
+    private SearchController search;
+    private PhotoLoader loader;
+    private PhotoTable table = new PhotoTable(); // MediaStore columns of the loaded photos
+    private List<PhotoInfo> reconciling; // fresh rows collected while a LibrarySnapshot is on screen
+    private long createdAt;              // onCreate uptime, for GridTiming; 0 once logged
+    private long mediaVersion = -1; // MediaChangeTracker version the list reflects; -1 = never loaded
 
     private boolean isContentUri(String path) { return path != null && path.startsWith("content://"); }
 
@@ -60,6 +73,7 @@ public class PhotosActivity extends AppCompatActivity {
 
     @Override protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        createdAt = SystemClock.uptimeMillis();
         setContentView(R.layout.activity_photos);
 
         String folderName = getIntent().getStringExtra("folder_name");
@@ -76,19 +90,119 @@ public class PhotosActivity extends AppCompatActivity {
 
         recyclerView.setLayoutManager(new GridLayoutManager(this, 4));
 
+        search = new SearchController(this::matchPhotos, (q, results) -> {
+            if (adapter != null) adapter.updatePhotos(results);
+        });
+
         searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
-            @Override public boolean onQueryTextSubmit(String q) { searchPhotos(q); return true; }
-            @Override public boolean onQueryTextChange(String t) { if (t.isEmpty()) loadPhotos(); else searchPhotos(t); return true; }
+            @Override public boolean onQueryTextSubmit(String q) { loader.requestAll(); search.submit(q); return true; }
+            @Override public boolean onQueryTextChange(String t) {
+                if (!t.isEmpty()) {
+                    loader.requestAll();
+                    search.submit(t);
+                } else {
+                    search.cancel();
+                    if (adapter != null) adapter.updatePhotos(allPhotos);
+                }
+                return true;
+            }
         });
 
+        loader = new PhotoLoader(this::onPhotosLoaded);
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override public void onScrolled(RecyclerView rv, int dx, int dy) {
+                // fetch the next page while the last rows are still a screen or so away
+                GridLayoutManager lm = (GridLayoutManager) rv.getLayoutManager();
+                if (adapter != null && lm.findLastVisibleItemPosition() >= allPhotos.size() - MediaPager.PAGE_SIZE / 2) {
+                    loader.requestMore();
+                }
+            }
+        });
+        MetadataRepository.getInstance().addListener(metaListener);
+
         fabActions.setOnClickListener(v -> showBatchActionsDialog());
 
-        if (ensureMediaPermission()) loadPhotos();
+        if (ensureMediaPermission()) {
+            showSnapshot();
+            loadPhotos();
+        }
+    }
+
+    @Override protected void onStop() {
+        super.onStop();
+        // a snapshot still on screen (fresh list not in yet) isn't worth writing back
+        String key = snapshotKey();
+        if (key != null && reconciling == null && (loader.isFinished() || !allPhotos.isEmpty())) {
+            LibrarySnapshot.write(this, key, allPhotos);
+        }
+    }
+
+    @Override protected void onDestroy() {
+        MetadataRepository.getInstance().removeListener(metaListener);
+        search.shutdown();
+        loader.shutdown();
+        super.onDestroy();
     }
 
     @Override protected void onResume() {
         super.onResume();
-        if (hasMediaPermission()) loadPhotos();
+        if (hasMediaPermission()) refreshChangedMedia();
+    }
+
+    // Coming back (e.g. from the share sheet or an external viewer): re-fetch only the MediaStore rows that
+    // changed meanwhile; a full reload only when the tracker can't name them, for albums, or pre-29 files.
+    private void refreshChangedMedia() {
+        MediaChangeTracker tracker = MediaChangeTracker.getInstance();
+        Set<Long> changed = mediaVersion < 0 ? null : tracker.changesSince(mediaVersion);
+        if (changed != null && changed.isEmpty()) return;
+        String albumQuery = getIntent().getStringExtra("album_query");
+        if (changed == null || Build.VERSION.SDK_INT < 29 || albumQuery != null) {
+            loadPhotos();
+            return;
+        }
+        long version = tracker.version();
+        String folderRel = getIntent().getStringExtra("folder_relpath");
+        String rel = folderRel != null ? folderRel : BASE_REL;
+        PhotoTable t = table;
+        loader.refetch(() -> MediaPager.fetch(getContentResolver(), rel, changed, loadMetaMap(), t), rows -> {
+            mediaVersion = version;
+            mergeChangedMedia(changed, rows);
+        });
+    }
+
+    // Diffs re-fetched rows into the (newest first) list: rows gone from the folder drop out, loaded rows
+    // update in place, others are inserted by DATE_ADDED if they fall within the pages loaded so far.
+    private void mergeChangedMedia(Set<Long> ids, List<PhotoInfo> rows) {
+        Map<String, PhotoInfo> fresh = new HashMap<>();
+        for (PhotoInfo p : rows) fresh.put(p.path, p);
+        Set<String> dirty = new HashSet<>();
+        for (Long id : ids) dirty.add(ContentUris.withAppendedId(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, id).toString());
+
+        for (Iterator<PhotoInfo> it = allPhotos.iterator(); it.hasNext(); ) {
+            PhotoInfo p = it.next();
+            if (!dirty.contains(p.path)) continue;
+            PhotoInfo f = fresh.remove(p.path);
+            if (f == null) {
+                it.remove();
+                selectedPhotos.remove(p);
+            } else {
+                p.name = f.name;
+                p.folder = f.folder;
+                p.added = f.added;
+            }
+        }
+        boolean all = loader.isFinished();
+        for (PhotoInfo f : fresh.values()) {
+            int at = 0;
+            while (at < allPhotos.size() && allPhotos.get(at).added > f.added) at++;
+            if (at < allPhotos.size() || all) allPhotos.add(at, f); // else a later page brings it
+        }
+
+        search.setPhotos(allPhotos);
+        String query = searchView.getQuery().toString();
+        if (!query.isEmpty()) search.submit(query);
+        else if (adapter != null) adapter.updatePhotos(allPhotos);
+        updateTitle();
     }
 
     private boolean hasMediaPermission() {
@@ -113,61 +227,122 @@ public class PhotosActivity extends AppCompatActivity {
         return false;
     }
 
+    // Reloads in the background; the current list stays on screen until the first chunk arrives.
     private void loadPhotos() {
-        allPhotos.clear();
+        mediaVersion = MediaChangeTracker.getInstance().version();
         String folderPath = getIntent().getStringExtra("folder_path");     // legacy path
         String folderRel = getIntent().getStringExtra("folder_relpath");    // scoped relpath
+        String albumQuery = getIntent().getStringExtra("album_query");      // smart album
 
-        HashMap<String, Meta> meta = loadMetaMap();
+        PhotoTable t = new PhotoTable();
+        table = t;
+        loader.load(sink -> {
+            Map<String, PhotoRecord> meta = loadMetaMap();
 
-        if (Build.VERSION.SDK_INT >= 29) {
-            String sel;
-            String[] args;
-            if (folderRel != null) {
-                sel = MediaStore.Images.Media.RELATIVE_PATH + " LIKE ?";
-                args = new String[]{ folderRel + "%" };
+            if (albumQuery != null) {
+                // folder: and free-text terms need the names of content:// members
+                MediaLibrary.refreshNames(this);
+                addAlbumPhotos(PhotoStore.album(prefs, albumQuery, MediaLibrary::names), meta, sink);
+            } else if (Build.VERSION.SDK_INT >= 29) {
+                String rel = folderRel != null ? folderRel : BASE_REL;
+                // Android 11+: cached library brought up to date by a generation delta, handed out a page
+                // at a time like MediaPager's
+                if (MediaLibrary.sync(this)) {
+                    MediaLibrary.Pager library = MediaLibrary.pager(rel);
+                    do {
+                        for (MediaLibrary.Row r : library.next()) sink.add(MediaLibrary.toPhoto(r, meta, t));
+                    } while (!library.isExhausted() && sink.awaitDemand());
+                    return;
+                }
+                MediaPager pager = new MediaPager(getContentResolver(), rel);
+                try {
+                    do {
+                        pager.next(meta, sink, t);
+                    } while (!pager.isExhausted() && sink.awaitDemand());
+                } catch (SecurityException se) {
+                    runOnUiThread(() -> { if (ensureMediaPermission()) loadPhotos(); });
+                }
             } else {
-                sel = MediaStore.Images.Media.RELATIVE_PATH + " LIKE ?";
-                args = new String[]{ BASE_REL + "%" };
-            }
-            String[] proj = { MediaStore.Images.Media._ID };
-            try (Cursor c = getContentResolver().query(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, proj, sel, args, null)) {
-                if (c != null) {
-                    int idIdx = c.getColumnIndexOrThrow(MediaStore.Images.Media._ID);
-                    while (c.moveToNext()) {
-                        long id = c.getLong(idIdx);
-                        Uri u = ContentUris.withAppendedId(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, id);
-                        PhotoInfo p = new PhotoInfo();
-                        p.path = u.toString();
-                        Meta m = meta.get(p.path);
-                        if (m != null) {
-                            p.tags = m.tags;
-                            p.date = m.date;
-                            p.favorite = m.favorite;
-                        }
-                        allPhotos.add(p);
-                    }
+                if (folderPath != null) {
+                    addLegacyFiles(LegacyScanner.images(this, new File(folderPath), true), meta, sink);
+                } else {
+                    // every folder's photos, not the loose files in the base directory
+                    File base = new File(Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_PICTURES), "GalleryOrganizer");
+                    addLegacyFiles(LegacyScanner.images(this, base, false), meta, sink);
                 }
-            } catch (SecurityException se) {
-                if (ensureMediaPermission()) loadPhotos();
+            }
+        });
+    }
+
+    // Last session's grid from LibrarySnapshot, drawn before anything is read; onPhotosLoaded swaps in the
+    // fresh list once it covers as many rows.
+    private void showSnapshot() {
+        String key = snapshotKey();
+        List<PhotoInfo> snap = key == null ? null : LibrarySnapshot.read(this, key);
+        if (snap == null || snap.isEmpty()) return;
+        reconciling = new ArrayList<>();
+        allPhotos.addAll(snap);
+        adapter = new ImprovedPhotoAdapter(allPhotos, this::onPhotoClick, this::onPhotoLongClick);
+        recyclerView.setAdapter(adapter);
+        search.setPhotos(allPhotos);
+        logFirstFrame("snapshot");
+    }
+
+    // one snapshot per folder; smart albums are quick to list and aren't snapshotted
+    private String snapshotKey() {
+        if (getIntent().getStringExtra("album_query") != null) return null;
+        String folderRel = getIntent().getStringExtra("folder_relpath");
+        String folderPath = getIntent().getStringExtra("folder_path");
+        return "photos:" + (folderRel != null ? folderRel : folderPath != null ? folderPath : "");
+    }
+
+    private void logFirstFrame(String source) {
+        if (createdAt == 0) return;
+        GridTiming.logFirstFrame(recyclerView, "PhotosActivity", createdAt, source);
+        createdAt = 0;
+    }
+
+    // Main thread: a chunk of the list being loaded. The first chunk replaces the list, later ones append.
+    private void onPhotosLoaded(List<PhotoInfo> chunk, boolean first, boolean settled) {
+        if (reconciling != null) {
+            // snapshot on screen: keep it until the fresh rows cover it, asking for pages as needed
+            if (first) reconciling.clear();
+            reconciling.addAll(chunk);
+            if (reconciling.size() < allPhotos.size() && !(settled && loader.isFinished())) {
+                if (settled) loader.requestMore();
                 return;
-            } catch (Exception ignored) {}
-        } else {
-            if (folderPath != null) {
-                addLegacyFilesRecursively(new File(folderPath), meta);
-            } else {
-                File base = new File(Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_PICTURES), "GalleryOrganizer");
-                File[] subs = base.listFiles(File::isDirectory);
-                if (subs != null) for (File f : subs) addLegacyFilesRecursively(f, meta);
+            }
+            chunk = reconciling;
+            first = true;
+            reconciling = null;
+            // the fresh rows are new objects: carry a selection made on the snapshot grid over by path
+            if (!selectedPhotos.isEmpty()) {
+                Set<String> selected = new HashSet<>();
+                for (PhotoInfo p : selectedPhotos) selected.add(p.path);
+                selectedPhotos.clear();
+                for (PhotoInfo p : chunk) if (selected.contains(p.path)) selectedPhotos.add(p);
+                if (adapter != null) adapter.setSelectedPhotos(selectedPhotos);
+                updateTitle();
             }
         }
-
+        if (first) allPhotos.clear();
+        int start = allPhotos.size();
+        allPhotos.addAll(chunk);
         if (adapter == null) {
             adapter = new ImprovedPhotoAdapter(allPhotos, this::onPhotoClick, this::onPhotoLongClick);
             recyclerView.setAdapter(adapter);
-        } else {
+        } else if (first) {
             adapter.updatePhotos(allPhotos);
+        } else {
+            adapter.notifyPhotosAppended(allPhotos, start, chunk.size());
         }
+        if (!allPhotos.isEmpty()) logFirstFrame("load");
+        if (!settled) return;
+
+        // the search index follows the loaded pages; a query typed meanwhile runs again on the full list
+        search.appendPhotos(allPhotos);
+        String query = searchView.getQuery().toString();
+        if (!query.isEmpty()) search.submit(query);
         updateTitle();
 
         if (allPhotos.isEmpty()) {
@@ -175,56 +350,123 @@ public class PhotosActivity extends AppCompatActivity {
         }
     }
 
-    private void addLegacyFilesRecursively(File dir, HashMap<String, Meta> meta) {
-        if (dir == null || !dir.exists()) return;
-        File[] files = dir.listFiles();
-        if (files == null) return;
+    // Pre-Android 10: image files found by LegacyScanner (parallel walk, cached by directory mtime).
+    private void addLegacyFiles(List<File> files, Map<String, PhotoRecord> meta, PhotoLoader.Sink sink) {
         for (File f : files) {
-            if (f.isDirectory()) { addLegacyFilesRecursively(f, meta); continue; }
-            String n = f.getName().toLowerCase();
-            if (!(n.endsWith(".jpg") || n.endsWith(".jpeg") || n.endsWith(".png") || n.endsWith(".webp"))) continue;
+            if (sink.isCancelled()) return;
             PhotoInfo p = new PhotoInfo();
             p.path = f.getAbsolutePath();
-            Meta m = meta.get(p.path);
+            p.name = f.getName();
+            p.folder = f.getParentFile().getName();
+            PhotoRecord m = meta.get(p.path);
             if (m != null) {
                 p.tags = m.tags;
                 p.date = m.date;
                 p.favorite = m.favorite;
             }
-            allPhotos.add(p);
+            sink.add(p);
         }
     }
 
-    private static class Meta { String tags=""; String date=""; boolean favorite=false; }
-    private HashMap<String, Meta> loadMetaMap() {
-        HashMap<String, Meta> map = new HashMap<>();
-        try {
-            JSONArray arr = new JSONArray(prefs.getString("photos", "[]"));
-            for (int i = 0; i < arr.length(); i++) {
-                String entry = arr.getString(i);
-                String[] parts = entry.split("\\|");
-                if (parts.length >= 5) {
-                    Meta m = new Meta();
-                    m.tags = parts[1];
-                    m.date = parts[2];
-                    m.favorite = "true".equals(parts[4]);
-                    map.put(parts[0], m);
-                }
+    // Smart album: PhotoStore hands over the members (newest first) and only those are looked up, in
+    // MediaStore by _ID or on disk, which also drops photos deleted outside the app.
+    private void addAlbumPhotos(List<String> paths, Map<String, PhotoRecord> meta, PhotoLoader.Sink sink) {
+        Map<String, String[]> media = new HashMap<>(); // content uri -> {name, folder}
+        if (Build.VERSION.SDK_INT >= 29) {
+            List<String> ids = new ArrayList<>();
+            for (String path : paths) if (isContentUri(path)) ids.add(Uri.parse(path).getLastPathSegment());
+            String[] proj = { MediaStore.Images.Media._ID, MediaStore.Images.Media.DISPLAY_NAME, MediaStore.Images.Media.RELATIVE_PATH };
+            for (int from = 0; from < ids.size(); from += 500) {
+                List<String> chunk = ids.subList(from, Math.min(ids.size(), from + 500));
+                StringBuilder sel = new StringBuilder(MediaStore.Images.Media._ID + " IN (");
+                for (int i = 0; i < chunk.size(); i++) sel.append(i == 0 ? "?" : ",?");
+                sel.append(')');
+                try (Cursor c = getContentResolver().query(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, proj,
+                        sel.toString(), chunk.toArray(new String[0]), null)) {
+                    if (c == null) continue;
+                    while (c.moveToNext()) {
+                        Uri u = ContentUris.withAppendedId(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, c.getLong(0));
+                        media.put(u.toString(), new String[]{ safe(c.getString(1)), lastSegment(c.getString(2)) });
+                    }
+                } catch (Exception ignored) {}
             }
-        } catch (Exception ignored) {}
-        return map;
+        }
+        for (String path : paths) {
+            PhotoInfo p = new PhotoInfo();
+            p.path = path;
+            if (isContentUri(path)) {
+                String[] m = media.get(path);
+                if (m == null) continue;
+                p.name = m[0];
+                p.folder = m[1];
+            } else {
+                File f = new File(path);
+                if (!f.exists()) continue;
+                p.name = f.getName();
+                p.folder = f.getParentFile() != null ? f.getParentFile().getName() : "";
+            }
+            PhotoRecord m = meta.get(path);
+            if (m != null) {
+                p.tags = m.tags;
+                p.date = m.date;
+                p.favorite = m.favorite;
+            }
+            sink.add(p);
+        }
+    }
+
+    private Map<String, PhotoRecord> loadMetaMap() {
+        return MetadataRepository.getInstance().snapshot(prefs);
     }
 
-    private void searchPhotos(String query) {
-        List<PhotoInfo> results = new ArrayList<>();
+    // Tag/favorite edits only refresh the affected items; the photo list itself comes from loadPhotos().
+    private void onMetadataChanged(Set<String> paths) {
+        // an edit can move photos into or out of a smart album; its member list is already current
+        if (getIntent().getStringExtra("album_query") != null) { loadPhotos(); return; }
+        Map<String, PhotoRecord> meta = loadMetaMap();
+        boolean any = false;
         for (PhotoInfo p : allPhotos) {
-            if ((p.tags != null && p.tags.toLowerCase().contains(query.toLowerCase()))
-                    || (p.date != null && p.date.contains(query))
-                    || (p.path != null && p.path.toLowerCase().contains(query.toLowerCase()))) {
-                results.add(p);
+            if (!paths.contains(p.path)) continue;
+            PhotoRecord m = meta.get(p.path);
+            p.tags = m != null ? m.tags : "";
+            p.date = m != null ? m.date : "";
+            p.favorite = m != null && m.favorite;
+            any = true;
+        }
+        if (!any) return;
+        search.invalidate(paths);
+        if (adapter != null) adapter.notifyPhotosChanged(paths);
+    }
+
+    // "Pictures/GalleryOrganizer/Trips/2024/" -> "2024"
+    private static String lastSegment(String relPath) {
+        if (relPath == null) return "";
+        String r = relPath.endsWith("/") ? relPath.substring(0, relPath.length() - 1) : relPath;
+        return r.substring(r.lastIndexOf('/') + 1);
+    }
+
+    private static String safe(String s) { return s == null ? "" : s; }
+
+    // Search thread: "key:value" queries run as a PhotoQuery plan, tag expressions through the tag index;
+    // anything else is a substring of name, folder, tags or date (PhotoColumns.text).
+    private BitSet matchPhotos(String query, PhotoColumns columns, BitSet candidates, SearchController.Token token) {
+        List<PhotoInfo> photos = columns.photos;
+        BitSet hits = new BitSet(photos.size());
+        if (PhotoQuery.isStructured(query)) {
+            hits = PhotoQuery.parse(query).run(columns);
+            hits.and(candidates);
+            return hits;
+        }
+        if (TagFilter.isExpression(query)) {
+            Set<String> tagged = PhotoStore.filterByTags(prefs, query);
+            for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+                if (tagged.contains(photos.get(i).path)) hits.set(i);
             }
+            return hits;
         }
-        if (adapter != null) adapter.updatePhotos(results);
+        hits = columns.text(query.toLowerCase(Locale.ROOT));
+        hits.and(candidates);
+        return hits;
     }
 
     private void onPhotoClick(PhotoInfo photo) {
@@ -323,13 +565,18 @@ public class PhotosActivity extends AppCompatActivity {
 
     private void copyPhotosToFolder(String destFolderName) {
         int count = 0;
+        PhotoStore.Editor edits = PhotoStore.edit(prefs);
         for (PhotoInfo p : selectedPhotos) {
             try {
                 if (isContentUri(p.path) && Build.VERSION.SDK_INT >= 29) {
                     Uri src = Uri.parse(p.path);
                     String dn = "IMG_" + System.currentTimeMillis() + ".jpg";
                     String mm = "image/jpeg";
-                    try (Cursor c = getContentResolver().query(src, new String[]{ MediaStore.Images.Media.DISPLAY_NAME, MediaStore.Images.Media.MIME_TYPE }, null, null, null)) {
+                    int row = table.find(p.path);
+                    if (row >= 0) {
+                        dn = table.name(row);
+                        mm = table.mime(row);
+                    } else try (Cursor c = getContentResolver().query(src, new String[]{ MediaStore.Images.Media.DISPLAY_NAME, MediaStore.Images.Media.MIME_TYPE }, null, null, null)) {
                         if (c != null && c.moveToFirst()) {
                             dn = c.getString(c.getColumnIndexOrThrow(MediaStore.Images.Media.DISPLAY_NAME));
                             mm = c.getString(c.getColumnIndexOrThrow(MediaStore.Images.Media.MIME_TYPE));
@@ -341,13 +588,14 @@ public class PhotosActivity extends AppCompatActivity {
                     cv.put(MediaStore.Images.Media.RELATIVE_PATH, BASE_REL + destFolderName + "/");
                     Uri out = getContentResolver().insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, cv);
                     if (out == null) continue;
+                    FolderStats.touch(out);
                     try (InputStream in = getContentResolver().openInputStream(src);
                          java.io.OutputStream os = getContentResolver().openOutputStream(out, "w")) {
                         if (in == null || os == null) { getContentResolver().delete(out, null, null); continue; }
                         byte[] buf = new byte[8192]; int len;
                         while ((len = in.read(buf)) > 0) os.write(buf, 0, len);
                     }
-                    PhotoStore.addNew(prefs, out.toString(), "", false);
+                    edits.addNew(out.toString(), "", false);
                     count++;
                 } else {
                     File src = new File(p.path);
@@ -360,11 +608,12 @@ public class PhotosActivity extends AppCompatActivity {
                         byte[] buf = new byte[8192]; int len;
                         while ((len = in.read(buf)) > 0) out.write(buf, 0, len);
                     }
-                    PhotoStore.addNew(prefs, dst.getAbsolutePath(), "", false);
+                    edits.addNew(dst.getAbsolutePath(), "", false);
                     count++;
                 }
             } catch (Exception ignored) {}
         }
+        edits.apply();
         Toast.makeText(this, count + " photos copied", Toast.LENGTH_SHORT).show();
         clearSelection();
         loadPhotos();
@@ -372,13 +621,18 @@ public class PhotosActivity extends AppCompatActivity {
 
     private void movePhotosToFolder(String destFolderName) {
         int count = 0;
+        PhotoStore.Editor edits = PhotoStore.edit(prefs);
         for (PhotoInfo p : selectedPhotos) {
             try {
                 if (isContentUri(p.path) && Build.VERSION.SDK_INT >= 29) {
                     Uri src = Uri.parse(p.path);
                     String dn = "IMG_" + System.currentTimeMillis() + ".jpg";
                     String mm = "image/jpeg";
-                    try (Cursor c = getContentResolver().query(src, new String[]{ MediaStore.Images.Media.DISPLAY_NAME, MediaStore.Images.Media.MIME_TYPE }, null, null, null)) {
+                    int row = table.find(p.path);
+                    if (row >= 0) {
+                        dn = table.name(row);
+                        mm = table.mime(row);
+                    } else try (Cursor c = getContentResolver().query(src, new String[]{ MediaStore.Images.Media.DISPLAY_NAME, MediaStore.Images.Media.MIME_TYPE }, null, null, null)) {
                         if (c != null && c.moveToFirst()) {
                             dn = c.getString(c.getColumnIndexOrThrow(MediaStore.Images.Media.DISPLAY_NAME));
                             mm = c.getString(c.getColumnIndexOrThrow(MediaStore.Images.Media.MIME_TYPE));
@@ -390,6 +644,7 @@ public class PhotosActivity extends AppCompatActivity {
                     cv.put(MediaStore.Images.Media.RELATIVE_PATH, BASE_REL + destFolderName + "/");
                     Uri out = getContentResolver().insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, cv);
                     if (out == null) continue;
+                    FolderStats.touch(out);
                     try (InputStream in = getContentResolver().openInputStream(src);
                          java.io.OutputStream os = getContentResolver().openOutputStream(out, "w")) {
                         if (in == null || os == null) { getContentResolver().delete(out, null, null); continue; }
@@ -397,7 +652,8 @@ public class PhotosActivity extends AppCompatActivity {
                         while ((len = in.read(buf)) > 0) os.write(buf, 0, len);
                     }
                     getContentResolver().delete(src, null, null);
-                    PhotoStore.replacePath(prefs, src.toString(), out.toString());
+                    FolderStats.touch(src);
+                    edits.replacePath(src.toString(), out.toString());
                     count++;
                 } else {
                     File src = new File(p.path);
@@ -411,12 +667,13 @@ public class PhotosActivity extends AppCompatActivity {
                         while ((len = in.read(buf)) > 0) out.write(buf, 0, len);
                     }
                     if (src.delete()) {
-                        PhotoStore.replacePath(prefs, src.getAbsolutePath(), dst.getAbsolutePath());
+                        edits.replacePath(src.getAbsolutePath(), dst.getAbsolutePath());
                         count++;
                     }
                 }
             } catch (Exception ignored) {}
         }
+        edits.apply();
         Toast.makeText(this, count + " photos moved", Toast.LENGTH_SHORT).show();
         clearSelection();
         loadPhotos();
@@ -450,18 +707,18 @@ public class PhotosActivity extends AppCompatActivity {
     private void showAddTagsDialog() {
         AlertDialog.Builder b = new AlertDialog.Builder(this);
         b.setTitle("Add Tags to " + selectedPhotos.size() + " photos");
-        final EditText et = new EditText(this);
-        et.setHint("comma,separated,tags");
+        final MultiAutoCompleteTextView et = TagSuggestAdapter.newTagField(this, prefs);
         b.setView(et);
         b.setPositiveButton("Add", (d, w) -> {
             String tags = et.getText().toString().trim();
             if (tags.isEmpty()) return;
+            PhotoStore.Editor edits = PhotoStore.edit(prefs);
             for (PhotoInfo p : selectedPhotos) {
-                PhotoStore.setTags(prefs, p.path, tags);
+                edits.setTags(p.path, tags);
             }
+            edits.apply();
             Toast.makeText(this, "Tags added", Toast.LENGTH_SHORT).show();
             clearSelection();
-            loadPhotos();
         });
         b.setNegativeButton("Cancel", null);
         b.show();
@@ -691,7 +948,15 @@ public class PhotosActivity extends AppCompatActivity {
                 String[] proj = { MediaStore.Images.Media.DISPLAY_NAME, MediaStore.Images.Media.SIZE,
                         MediaStore.Images.Media.WIDTH, MediaStore.Images.Media.HEIGHT,
                         MediaStore.Images.Media.DATE_TAKEN };
-                try (Cursor c = getContentResolver().query(u, proj, null, null, null)) {
+                int row = table.find(p.path);
+                if (row >= 0) {
+                    name = table.name(row);
+                    size = table.size(row);
+                    w = table.width(row);
+                    h = table.height(row);
+                    if (table.dateTaken(row) > 0) date = new java.text.SimpleDateFormat("yyyy-MM-dd HH:mm", java.util.Locale.getDefault())
+                            .format(new java.util.Date(table.dateTaken(row)));
+                } else try (Cursor c = getContentResolver().query(u, proj, null, null, null)) {
                     if (c != null && c.moveToFirst()) {
                         int idxN = c.getColumnIndex(MediaStore.Images.Media.DISPLAY_NAME);
                         int idxS = c.getColumnIndex(MediaStore.Images.Media.SIZE);
@@ -746,19 +1011,22 @@ public class PhotosActivity extends AppCompatActivity {
     private String getFolderNameForPhoto(PhotoInfo p) {
         try {
             if (p.path.startsWith("content://")) {
-                Uri u = Uri.parse(p.path);
-                try (Cursor c = getContentResolver().query(u,
+                String rel = null;
+                int row = table.find(p.path);
+                if (row >= 0) {
+                    rel = table.relPath(row);
+                } else try (Cursor c = getContentResolver().query(Uri.parse(p.path),
                         new String[]{MediaStore.Images.Media.RELATIVE_PATH}, null, null, null)) {
                     if (c != null && c.moveToFirst()) {
-                        String rel = c.getString(c.getColumnIndexOrThrow(MediaStore.Images.Media.RELATIVE_PATH));
-                        if (rel != null && rel.startsWith(BASE_REL)) {
-                            String rem = rel.substring(BASE_REL.length());
-                            if (rem.endsWith("/")) rem = rem.substring(0, rem.length()-1);
-                            int slash = rem.indexOf("/");
-                            return slash > 0 ? rem.substring(0, slash) : rem;
-                        }
+                        rel = c.getString(c.getColumnIndexOrThrow(MediaStore.Images.Media.RELATIVE_PATH));
                     }
                 }
+                if (rel != null && rel.startsWith(BASE_REL)) {
+                    String rem = rel.substring(BASE_REL.length());
+                    if (rem.endsWith("/")) rem = rem.substring(0, rem.length()-1);
+                    int slash = rem.indexOf("/");
+                    return slash > 0 ? rem.substring(0, slash) : rem;
+                }
             } else {
                 String path = p.path.replace("\\", "/");
                 int i = path.indexOf("/Pictures/GalleryOrganizer/");
@@ -811,17 +1079,20 @@ public class PhotosActivity extends AppCompatActivity {
                 .setTitle("Delete Photos")
                 .setMessage("Delete " + selectedPhotos.size() + " photos?")
                 .setPositiveButton("Delete", (d, w) -> {
+                    PhotoStore.Editor edits = PhotoStore.edit(prefs);
                     for (PhotoInfo p : selectedPhotos) {
                         try {
                             if (isContentUri(p.path)) {
                                 getContentResolver().delete(Uri.parse(p.path), null, null);
+                                FolderStats.touch(Uri.parse(p.path));
                             } else {
                                 File f = new File(p.path);
                                 if (f.exists()) f.delete();
                             }
-                            PhotoStore.removeByExactPath(prefs, p.path);
+                            edits.removeByExactPath(p.path);
                         } catch (Exception ignored) {}
                     }
+                    edits.apply();
                     Toast.makeText(this, "Deleted", Toast.LENGTH_SHORT).show();
                     clearSelection();
                     loadPhotos();
@@ -0,0 +1,145 @@
+package com.nader.galleryorganizer;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Runs gallery searches off the main thread. Keystrokes are debounced, each new query cancels the ones
+// before it, and a query containing the previous one (e.g. "rec" -> "rece") only re-checks the previous
+// hits. Also owns the PhotoColumns (and name/folder TrigramIndex) for the current list, kept on the search thread.
+class SearchController {
+    interface Matcher {
+        // Positions in columns.photos matching query; only positions set in candidates need checking.
+        BitSet match(String query, PhotoColumns columns, BitSet candidates, Token token);
+    }
+
+    interface Callback {
+        void onResults(String query, List<PhotoInfo> results);
+    }
+
+    final class Token {
+        private final int gen;
+
+        private Token(int gen) { this.gen = gen; }
+
+        boolean isCancelled() { return generation.get() != gen; }
+    }
+
+    private static final long DEBOUNCE_MS = 150;
+
+    private final Matcher matcher;
+    private final Callback callback;
+    private final Handler main = new Handler(Looper.getMainLooper());
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "PhotoSearch");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicInteger generation = new AtomicInteger();
+    private Runnable pending;
+
+    // search thread only
+    private PhotoColumns columns = new PhotoColumns();
+    private String lastQuery; // hits of the last completed search, for refinement
+    private BitSet lastHits;
+
+    SearchController(Matcher matcher, Callback callback) {
+        this.matcher = matcher;
+        this.callback = callback;
+    }
+
+    // New photo list (main thread), indexed from scratch; searches queued after this see it.
+    void setPhotos(List<PhotoInfo> list) {
+        final List<PhotoInfo> copy = new ArrayList<>(list);
+        worker.execute(() -> {
+            columns = new PhotoColumns();
+            columns.append(copy);
+            lastQuery = null;
+        });
+    }
+
+    // The list last passed with rows added at the end (a loaded page): only those are indexed. Anything
+    // else (a reload, or rows inserted or removed) falls back to a full setPhotos.
+    void appendPhotos(List<PhotoInfo> list) {
+        final List<PhotoInfo> copy = new ArrayList<>(list);
+        worker.execute(() -> {
+            if (!columns.isPrefixOf(copy)) columns = new PhotoColumns();
+            if (copy.size() == columns.size) return;
+            columns.append(copy);
+            lastQuery = null;
+        });
+    }
+
+    // Tags/favorites of these photos changed (PhotoInfo updated in place): re-derive their metadata columns,
+    // and earlier hits can't be narrowed any more.
+    void invalidate(Set<String> paths) {
+        final Set<String> copy = new HashSet<>(paths);
+        worker.execute(() -> {
+            columns.update(copy);
+            lastQuery = null;
+        });
+    }
+
+    void submit(String query) {
+        cancel();
+        final int gen = generation.get();
+        pending = () -> {
+            pending = null;
+            worker.execute(() -> run(query, new Token(gen)));
+        };
+        main.postDelayed(pending, DEBOUNCE_MS);
+    }
+
+    // Drops the pending and running search; no callback is delivered for them.
+    void cancel() {
+        if (pending != null) main.removeCallbacks(pending);
+        pending = null;
+        generation.incrementAndGet();
+    }
+
+    void shutdown() {
+        cancel();
+        worker.shutdownNow();
+    }
+
+    private void run(String query, Token token) {
+        if (token.isCancelled()) return;
+        BitSet candidates;
+        if (lastQuery != null && refines(query, lastQuery)) {
+            candidates = (BitSet) lastHits.clone();
+        } else {
+            candidates = columns.all();
+        }
+        BitSet hits = matcher.match(query, columns, candidates, token);
+        if (token.isCancelled()) return;
+        lastQuery = query;
+        lastHits = hits;
+
+        final List<PhotoInfo> results = new ArrayList<>(hits.cardinality());
+        for (int i = hits.nextSetBit(0); i >= 0; i = hits.nextSetBit(i + 1)) results.add(columns.photos.get(i));
+        main.post(() -> {
+            if (!token.isCancelled()) callback.onResults(query, results);
+        });
+    }
+
+    // Substring matching is monotonic: anything matching "receipt" also matches "rec".
+    // Boolean tag filters and structured queries are not, so they always start from the full list.
+    private static boolean refines(String query, String previous) {
+        if (TagFilter.isExpression(query) || TagFilter.isExpression(previous)) return false;
+        if (PhotoQuery.isStructured(query) || PhotoQuery.isStructured(previous)) return false;
+        // a date period narrows only as "2024" -> "2024-03" -> "2024-03-09"; other text is substring-matched
+        if (PhotoColumns.dayRange(query) != null) {
+            return PhotoColumns.dayRange(previous) != null && query.startsWith(previous);
+        }
+        return query.toLowerCase(Locale.ROOT).contains(previous.toLowerCase(Locale.ROOT));
+    }
+}
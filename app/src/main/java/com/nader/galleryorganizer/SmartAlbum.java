@@ -0,0 +1,27 @@
+package com.nader.galleryorganizer;
+
+import java.util.BitSet;
+
+// One smart album query materialized as PhotoStore ordinals (see TagIndex). PhotoStore re-tests a photo
+// whenever put()/remove() touch it, so reading the album never rescans the store. Members of a recent:
+// album are checked as of day; a later day only drops members, so a read re-tests just the members.
+final class SmartAlbum {
+    final PhotoQuery query;
+    final BitSet members = new BitSet();
+    int day;
+    PhotoQuery.MediaNames media; // names/folders of content:// members
+
+    SmartAlbum(PhotoQuery query, int day, PhotoQuery.MediaNames media) {
+        this.query = query;
+        this.day = day;
+        this.media = media;
+    }
+
+    void update(int ord, PhotoRecord r) {
+        members.set(ord, query.matches(r, day, media));
+    }
+
+    void remove(int ord) {
+        members.clear(ord);
+    }
+}
@@ -0,0 +1,47 @@
+package com.nader.galleryorganizer;
+import android.content.SharedPreferences;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeMap;
+
+// Saved smart album definitions: name -> PhotoQuery text, e.g. "Invoices" -> "tag:invoice".
+// Stored as "name\nquery" strings; membership itself lives in PhotoStore (see PhotoStore.album).
+public class SmartAlbumStore {
+    private static final String KEY = "smart_albums_set";
+
+    // name -> query, sorted by name; seeded with the common views until the user changes the set
+    public static synchronized TreeMap<String, String> get(SharedPreferences prefs) {
+        Set<String> set = prefs.getStringSet(KEY, null);
+        TreeMap<String, String> out = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        if (set == null) {
+            out.put("Favorites", "fav:true");
+            out.put("Last 30 days", "recent:30");
+            return out;
+        }
+        for (String e : set) {
+            int nl = e.indexOf('\n');
+            if (nl > 0) out.put(e.substring(0, nl), e.substring(nl + 1));
+        }
+        return out;
+    }
+
+    public static synchronized void put(SharedPreferences prefs, String name, String query) {
+        TreeMap<String, String> all = get(prefs);
+        all.remove(name);
+        all.put(name, query);
+        save(prefs, all);
+    }
+
+    public static synchronized void remove(SharedPreferences prefs, String name) {
+        TreeMap<String, String> all = get(prefs);
+        all.remove(name);
+        save(prefs, all);
+    }
+
+    private static void save(SharedPreferences prefs, TreeMap<String, String> all) {
+        Set<String> set = new HashSet<>();
+        for (String name : all.keySet()) set.add(name + "\n" + all.get(name));
+        prefs.edit().putStringSet(KEY, set).apply();
+    }
+}
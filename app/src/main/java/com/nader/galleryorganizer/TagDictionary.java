@@ -0,0 +1,66 @@
+package com.nader.galleryorganizer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+// Distinct normalized tags <-> dense int ids, plus an intern pool for raw tag strings so the thousands of
+// photos tagged "family" share one String. Ids are never reused; the set of distinct tags stays small.
+class TagDictionary {
+    private final HashMap<String, Integer> ids = new HashMap<>();
+    private final ArrayList<String> names = new ArrayList<>();
+    private final HashMap<String, String> rawPool = new HashMap<>();
+
+    int idOf(String tag) {
+        Integer id = ids.get(tag);
+        if (id != null) return id;
+        ids.put(tag, names.size());
+        names.add(tag);
+        return names.size() - 1;
+    }
+
+    // -1 if the tag was never seen
+    int find(String tag) {
+        Integer id = ids.get(normalize(tag));
+        return id == null ? -1 : id;
+    }
+
+    String name(int id) {
+        return names.get(id);
+    }
+
+    int size() {
+        return names.size();
+    }
+
+    // "Work, receipts,,2023" -> ids of [work, receipts, 2023]
+    int[] encode(String tags) {
+        List<String> split = split(tags);
+        int[] out = new int[split.size()];
+        for (int i = 0; i < out.length; i++) out[i] = idOf(split.get(i));
+        return out;
+    }
+
+    String internTags(String raw) {
+        if (raw == null || raw.isEmpty()) return "";
+        String s = rawPool.get(raw);
+        if (s != null) return s;
+        rawPool.put(raw, raw);
+        return raw;
+    }
+
+    static String normalize(String tag) {
+        return tag == null ? "" : tag.trim().toLowerCase(Locale.ROOT);
+    }
+
+    static List<String> split(String tags) {
+        List<String> out = new ArrayList<>();
+        if (tags == null || tags.isEmpty()) return out;
+        for (String t : tags.split(",")) {
+            String n = normalize(t);
+            if (!n.isEmpty() && !out.contains(n)) out.add(n);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,134 @@
+package com.nader.galleryorganizer;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+// Boolean tag filter evaluated as bitset operations on TagIndex:
+//   work AND receipts NOT 2023      cats OR dogs      "trip 2024" AND NOT (old OR blurry)
+// Keywords are upper-case; NOT binds tightest, then AND, then OR. Adjacent terms are ANDed.
+// Terms match whole tags, case-insensitively.
+final class TagFilter {
+    private interface Node {
+        BitSet eval(TagIndex index);
+    }
+
+    private final Node root;
+
+    private TagFilter(Node root) {
+        this.root = root;
+    }
+
+    // true when the query uses AND/OR/NOT, i.e. should be run as a filter rather than a plain search
+    static boolean isExpression(String query) {
+        for (String t : tokenize(query)) {
+            if (t.equals("AND") || t.equals("OR") || t.equals("NOT")) return true;
+        }
+        return false;
+    }
+
+    static TagFilter parse(String query) {
+        Parser p = new Parser(tokenize(query));
+        Node n = p.or();
+        return new TagFilter(n != null ? n : index -> new BitSet());
+    }
+
+    BitSet evaluate(TagIndex index) {
+        return root.eval(index);
+    }
+
+    private static final class Parser {
+        private final List<String> tokens;
+        private int pos;
+
+        Parser(List<String> tokens) {
+            this.tokens = tokens;
+        }
+
+        Node or() {
+            Node left = and();
+            while (accept("OR")) {
+                Node l = left, r = and();
+                if (r == null) break;
+                left = l == null ? r : index -> {
+                    BitSet b = l.eval(index);
+                    b.or(r.eval(index));
+                    return b;
+                };
+            }
+            return left;
+        }
+
+        Node and() {
+            Node left = null;
+            while (pos < tokens.size() && !peek("OR") && !peek(")")) {
+                accept("AND");
+                Node r = unary();
+                if (r == null) break;
+                Node l = left;
+                left = l == null ? r : index -> {
+                    BitSet b = l.eval(index);
+                    b.and(r.eval(index));
+                    return b;
+                };
+            }
+            return left;
+        }
+
+        Node unary() {
+            if (accept("NOT")) {
+                Node inner = unary();
+                if (inner == null) return null;
+                return index -> {
+                    BitSet b = index.all();
+                    b.andNot(inner.eval(index));
+                    return b;
+                };
+            }
+            if (accept("(")) {
+                Node inner = or();
+                accept(")");
+                return inner;
+            }
+            if (pos >= tokens.size() || peek(")") || peek("OR") || peek("AND")) return null;
+            String tag = tokens.get(pos++);
+            return index -> index.bits(tag);
+        }
+
+        private boolean peek(String t) {
+            return pos < tokens.size() && tokens.get(pos).equals(t);
+        }
+
+        private boolean accept(String t) {
+            if (!peek(t)) return false;
+            pos++;
+            return true;
+        }
+    }
+
+    // words, "quoted phrases", ( and )
+    private static List<String> tokenize(String s) {
+        List<String> out = new ArrayList<>();
+        if (s == null) return out;
+        int i = 0, n = s.length();
+        while (i < n) {
+            char c = s.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '(' || c == ')') {
+                out.add(String.valueOf(c));
+                i++;
+            } else if (c == '"') {
+                int end = s.indexOf('"', i + 1);
+                if (end < 0) end = n;
+                out.add(s.substring(i + 1, end));
+                i = end + 1;
+            } else {
+                int start = i;
+                while (i < n && !Character.isWhitespace(s.charAt(i)) && s.charAt(i) != '(' && s.charAt(i) != ')') i++;
+                out.add(s.substring(start, i));
+            }
+        }
+        return out;
+    }
+}
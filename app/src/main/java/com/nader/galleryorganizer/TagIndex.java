@@ -0,0 +1,99 @@
+package com.nader.galleryorganizer;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+
+// Inverted index over PhotoStore's cache, kept in step under its lock so searching never has to touch
+// every photo's tag string. Each photo gets a small int ordinal; each tag id (TagDictionary) a BitSet of
+// ordinals, so tag filters are bitset AND/OR/ANDNOT. Freed ordinals are reused. Usage counts feed the
+// autocomplete trie.
+class TagIndex {
+    private final TagDictionary dict = new TagDictionary();
+    private final TagTrie trie = new TagTrie();
+    private final ArrayList<BitSet> bitsByTag = new ArrayList<>();   // tag id -> photo ordinals
+    private final HashMap<String, Integer> ordinals = new HashMap<>(); // path -> ordinal
+    private final ArrayList<String> paths = new ArrayList<>();         // ordinal -> path (null when free)
+    private final ArrayList<int[]> tagsByOrdinal = new ArrayList<>();  // ordinal -> tag ids
+    private final BitSet live = new BitSet();
+
+    TagDictionary dictionary() {
+        return dict;
+    }
+
+    TagTrie trie() {
+        return trie;
+    }
+
+    // PhotoStore's photo ordinal for path, or -1
+    int ordinal(String path) {
+        Integer ord = ordinals.get(path);
+        return ord == null ? -1 : ord;
+    }
+
+    String path(int ord) {
+        return ord >= 0 && ord < paths.size() ? paths.get(ord) : null;
+    }
+
+    void add(PhotoRecord r) {
+        int[] ids = dict.encode(r.tags);
+        Integer ord = ordinals.get(r.path);
+        if (ord != null) {
+            clearTags(ord);
+        } else {
+            ord = live.nextClearBit(0);
+            ordinals.put(r.path, ord);
+            if (ord == paths.size()) {
+                paths.add(r.path);
+                tagsByOrdinal.add(ids);
+            } else {
+                paths.set(ord, r.path);
+            }
+            live.set(ord);
+        }
+        tagsByOrdinal.set(ord, ids);
+        for (int id : ids) {
+            while (bitsByTag.size() <= id) bitsByTag.add(new BitSet());
+            bitsByTag.get(id).set(ord);
+            trie.adjust(dict.name(id), 1);
+        }
+    }
+
+    void remove(PhotoRecord r) {
+        Integer ord = ordinals.remove(r.path);
+        if (ord == null) return;
+        clearTags(ord);
+        paths.set(ord, null);
+        tagsByOrdinal.set(ord, null);
+        live.clear(ord);
+    }
+
+    private void clearTags(int ord) {
+        int[] old = tagsByOrdinal.get(ord);
+        if (old == null) return;
+        for (int id : old) {
+            bitsByTag.get(id).clear(ord);
+            trie.adjust(dict.name(id), -1);
+        }
+    }
+
+    // Ordinals of photos carrying the tag (exact, case-insensitive); a copy the caller may modify.
+    BitSet bits(String tag) {
+        int id = dict.find(tag);
+        return id < 0 || id >= bitsByTag.size() ? new BitSet() : (BitSet) bitsByTag.get(id).clone();
+    }
+
+    BitSet all() {
+        return (BitSet) live.clone();
+    }
+
+    HashSet<String> toPaths(BitSet bits) {
+        HashSet<String> out = new HashSet<>(Math.max(16, bits.cardinality() * 2));
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            String p = i < paths.size() ? paths.get(i) : null;
+            if (p != null) out.add(p);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,55 @@
+package com.nader.galleryorganizer;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.widget.ArrayAdapter;
+import android.widget.Filter;
+import android.widget.MultiAutoCompleteTextView;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Dropdown for the tag dialogs: suggests existing tags for the token being typed, ranked by usage
+// (PhotoStore's tag trie). Filtering runs on the widget's filter thread.
+class TagSuggestAdapter extends ArrayAdapter<String> {
+    private static final int LIMIT = 8;
+
+    private final SharedPreferences prefs;
+    private final Filter filter = new Filter() {
+        @Override protected FilterResults performFiltering(CharSequence constraint) {
+            FilterResults r = new FilterResults();
+            List<String> tags = constraint == null ? new ArrayList<>()
+                    : PhotoStore.suggestTags(prefs, constraint.toString(), LIMIT);
+            r.values = tags;
+            r.count = tags.size();
+            return r;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override protected void publishResults(CharSequence constraint, FilterResults results) {
+            clear();
+            if (results.values != null) addAll((List<String>) results.values);
+            notifyDataSetChanged();
+        }
+    };
+
+    TagSuggestAdapter(Context context, SharedPreferences prefs) {
+        super(context, android.R.layout.simple_dropdown_item_1line, new ArrayList<>());
+        this.prefs = prefs;
+    }
+
+    @Override
+    public Filter getFilter() {
+        return filter;
+    }
+
+    // Comma-separated tag field with suggestions after the first typed letter.
+    static MultiAutoCompleteTextView newTagField(Context context, SharedPreferences prefs) {
+        MultiAutoCompleteTextView et = new MultiAutoCompleteTextView(context);
+        et.setHint("comma,separated,tags");
+        et.setThreshold(1);
+        et.setTokenizer(new MultiAutoCompleteTextView.CommaTokenizer());
+        et.setAdapter(new TagSuggestAdapter(context, prefs));
+        return et;
+    }
+}
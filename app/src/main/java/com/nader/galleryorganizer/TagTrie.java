@@ -0,0 +1,97 @@
+package com.nader.galleryorganizer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// Prefix trie over normalized tags with usage counts (photos carrying the tag), for tag autocomplete.
+// TagIndex bumps counts as photos gain/lose tags, so suggestions stay current without rebuilding.
+// Each node caches its most used completions; a lookup is a walk down the prefix plus a copy.
+class TagTrie {
+    private static final int TOP = 8;
+
+    private static final class Node {
+        char[] keys = new char[0];
+        Node[] kids = new Node[0];
+        String tag;   // set when a tag ends here
+        int count;
+        Node[] top;   // best completions in this subtree, by count; null when stale
+    }
+
+    private final Node root = new Node();
+
+    // delta = +1 / -1 photos using tag
+    void adjust(String tag, int delta) {
+        if (tag.isEmpty()) return;
+        Node n = root;
+        n.top = null;
+        for (int i = 0; i < tag.length(); i++) {
+            n = child(n, tag.charAt(i), delta > 0);
+            if (n == null) return;
+            n.top = null;
+        }
+        n.tag = tag;
+        n.count = Math.max(0, n.count + delta);
+    }
+
+    // Up to limit used tags starting with prefix (normalized), most used first, ties alphabetical.
+    List<String> suggest(String prefix, int limit) {
+        String p = TagDictionary.normalize(prefix);
+        Node n = root;
+        for (int i = 0; i < p.length() && n != null; i++) n = child(n, p.charAt(i), false);
+        if (n == null) return Collections.emptyList();
+        List<String> out = new ArrayList<>();
+        if (limit <= TOP) {
+            for (Node t : top(n)) {
+                if (out.size() == limit) break;
+                out.add(t.tag);
+            }
+            return out;
+        }
+        List<Node> all = new ArrayList<>();
+        collect(n, all);
+        Collections.sort(all, TagTrie::byUse);
+        for (int i = 0; i < all.size() && i < limit; i++) out.add(all.get(i).tag);
+        return out;
+    }
+
+    // children's cached lists merged with this node's own tag
+    private Node[] top(Node n) {
+        if (n.top != null) return n.top;
+        List<Node> best = new ArrayList<>();
+        if (n.tag != null && n.count > 0) best.add(n);
+        for (Node k : n.kids) Collections.addAll(best, top(k));
+        Collections.sort(best, TagTrie::byUse);
+        if (best.size() > TOP) best = best.subList(0, TOP);
+        return n.top = best.toArray(new Node[0]);
+    }
+
+    private static void collect(Node n, List<Node> out) {
+        if (n.tag != null && n.count > 0) out.add(n);
+        for (Node k : n.kids) collect(k, out);
+    }
+
+    private static int byUse(Node a, Node b) {
+        return a.count != b.count ? Integer.compare(b.count, a.count) : a.tag.compareTo(b.tag);
+    }
+
+    // keys kept sorted so lookup is a binary search
+    private static Node child(Node n, char c, boolean create) {
+        int at = Arrays.binarySearch(n.keys, c);
+        if (at >= 0) return n.kids[at];
+        if (!create) return null;
+        at = -at - 1;
+        char[] keys = new char[n.keys.length + 1];
+        Node[] kids = new Node[keys.length];
+        System.arraycopy(n.keys, 0, keys, 0, at);
+        System.arraycopy(n.kids, 0, kids, 0, at);
+        System.arraycopy(n.keys, at, keys, at + 1, n.keys.length - at);
+        System.arraycopy(n.kids, at, kids, at + 1, n.kids.length - at);
+        keys[at] = c;
+        kids[at] = new Node();
+        n.keys = keys;
+        n.kids = kids;
+        return kids[at];
+    }
+}
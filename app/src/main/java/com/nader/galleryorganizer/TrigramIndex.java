@@ -0,0 +1,84 @@
+package com.nader.galleryorganizer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+// Case-insensitive substring search over short texts (display name + folder name), one per photo in list order.
+// trigram -> ascending doc ids; a query of 3+ chars intersects its trigrams' posting lists (shortest first)
+// and verifies only the surviving candidates. Shorter queries scan the pre-lowered texts.
+// Docs are only ever appended (a gallery list growing page by page), which keeps every posting list ascending.
+class TrigramIndex {
+    private String[] texts = new String[16];
+    private int count;
+    private final HashMap<Long, IntList> postings = new HashMap<>();
+
+    // Adds the next doc; its id is the number of docs added before it.
+    void add(String doc) {
+        int d = count;
+        String t = doc == null ? "" : doc.toLowerCase(Locale.ROOT);
+        if (d == texts.length) texts = Arrays.copyOf(texts, d * 2);
+        texts[count++] = t;
+        for (int i = 0; i + 3 <= t.length(); i++) {
+            long key = key(t, i);
+            IntList list = postings.get(key);
+            if (list == null) postings.put(key, list = new IntList());
+            if (list.size == 0 || list.data[list.size - 1] != d) list.add(d);
+        }
+    }
+
+    // doc ids whose text contains query
+    BitSet search(String query) {
+        String q = query == null ? "" : query.toLowerCase(Locale.ROOT);
+        BitSet out = new BitSet(count);
+        if (q.isEmpty()) return out;
+        if (q.length() < 3) {
+            for (int d = 0; d < count; d++) if (texts[d].contains(q)) out.set(d);
+            return out;
+        }
+
+        List<IntList> lists = new ArrayList<>();
+        for (int i = 0; i + 3 <= q.length(); i++) {
+            IntList list = postings.get(key(q, i));
+            if (list == null) return out;
+            if (!lists.contains(list)) lists.add(list);
+        }
+        IntList shortest = lists.get(0);
+        for (IntList l : lists) if (l.size < shortest.size) shortest = l;
+
+        // lists are ascending, so one forward cursor per list is enough
+        lists.remove(shortest);
+        int[] cursor = new int[lists.size()];
+        outer:
+        for (int k = 0; k < shortest.size; k++) {
+            int d = shortest.data[k];
+            for (int j = 0; j < lists.size(); j++) {
+                IntList l = lists.get(j);
+                int c = cursor[j];
+                while (c < l.size && l.data[c] < d) c++;
+                cursor[j] = c;
+                if (c == l.size) break outer;
+                if (l.data[c] != d) continue outer;
+            }
+            if (texts[d].contains(q)) out.set(d);
+        }
+        return out;
+    }
+
+    private static long key(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+
+    private static final class IntList {
+        int[] data = new int[4];
+        int size;
+
+        void add(int v) {
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = v;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.nader.galleryorganizer;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Allocation benchmark behind the user-006 numbers: the old loadMetaMap parse (regex split of every
+ * "path|tags|date|ts|fav|" entry into a new PhotoInfo) against LegacyMetaReader streaming the same JSON
+ * into PhotoRecords. Counts bytes allocated by the current thread (HotSpot ThreadMXBean); the JSONArray
+ * the old code built first is not counted, which favours the old path.
+ *
+ * Plain JVM, not a unit test: run main() from the IDE, or compile this file together with
+ * LegacyMetaReader, PhotoRecord and PhotoInfo and run it with java.
+ */
+public class LegacyMetaReaderBenchmark {
+    private static final int ENTRIES = 50_000;
+    private static final int ROUNDS = 5; // the last round is reported, after warm-up
+
+    private static final com.sun.management.ThreadMXBean MX =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) {
+        List<String> entries = new ArrayList<>();
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < ENTRIES; i++) {
+            String e = "content://media/external/images/media/" + (100000 + i) + "|family,trip 2024|2024-03-0"
+                    + (i % 9 + 1) + "|" + (1700000000000L + i) + "|" + (i % 2 == 0) + "|";
+            entries.add(e);
+            if (i > 0) json.append(',');
+            json.append('"').append(e).append('"');
+        }
+        String prefs = json.append(']').toString();
+
+        for (int round = 0; round < ROUNDS; round++) {
+            long t0 = System.nanoTime(), a0 = allocated();
+            HashMap<String, PhotoInfo> old = new HashMap<>();
+            for (String s : entries) {
+                String[] parts = s.split("\\|", -1);
+                PhotoInfo p = new PhotoInfo();
+                p.path = parts[0];
+                p.tags = parts[1];
+                p.date = parts[2];
+                p.favorite = "true".equals(parts[4]);
+                old.put(p.path, p);
+            }
+            long a1 = allocated(), t1 = System.nanoTime();
+
+            LegacyMetaReader reader = new LegacyMetaReader(prefs);
+            HashMap<String, PhotoRecord> streamed = new HashMap<>();
+            PhotoRecord r;
+            while ((r = reader.next()) != null) streamed.put(r.path, r);
+            long a2 = allocated(), t2 = System.nanoTime();
+
+            if (round == ROUNDS - 1) {
+                System.out.printf("%d entries: split + PhotoInfo %.1f MB, %d ms | LegacyMetaReader %.1f MB, %d ms%n",
+                        streamed.size(), (a1 - a0) / 1e6, (t1 - t0) / 1_000_000, (a2 - a1) / 1e6, (t2 - t1) / 1_000_000);
+            }
+        }
+    }
+
+    private static long allocated() {
+        return MX.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
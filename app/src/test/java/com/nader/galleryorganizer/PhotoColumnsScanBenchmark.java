@@ -0,0 +1,101 @@
+package com.nader.galleryorganizer;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Timing benchmark behind the user-017 numbers: free-text queries over 10k / 50k / 100k synthetic photos,
+ * matched against PhotoColumns' pre-lowered keys sequentially and split into 4096-position ForkJoin leaves
+ * (forced, whatever the pool's parallelism), next to PhotoColumns.text() for the same query, which answers
+ * from the trigram and tag indexes. "e12" only hits the note tags, "img_2024012" only names. Each size runs
+ * with 200 distinct notes and with a note per photo (a tag dictionary as large as the list, where text()
+ * falls back to the scan). Reports the best of 30 runs; every variant must return the same hits.
+ *
+ * Plain JVM, not a unit test: run main() from the IDE, or compile this file together with PhotoColumns,
+ * TrigramIndex, TagDictionary and PhotoInfo and run it with java.
+ */
+public class PhotoColumnsScanBenchmark {
+    private static final int[] SIZES = {10_000, 50_000, 100_000};
+    private static final int[] NOTES = {200, 100_000}; // distinct note tags
+    private static final int RUNS = 30;
+    private static final int LEAF = 4096;
+    private static final String[] QUERIES = {"e12", "img_2024012"};
+    private static final String[] TAGS = {"family", "work", "receipt", "beach", "invoice", "trip", "cat", "dog"};
+
+    public static void main(String[] args) {
+        System.out.println("cpus " + Runtime.getRuntime().availableProcessors()
+                + ", common pool parallelism " + ForkJoinPool.getCommonPoolParallelism());
+        for (int n : SIZES) for (int notes : NOTES) {
+            Random rnd = new Random(3);
+            List<PhotoInfo> photos = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                PhotoInfo p = new PhotoInfo();
+                p.path = "/p" + i;
+                p.name = "IMG_" + (20240000 + i) + ".jpg";
+                p.folder = "Folder" + (i % 40);
+                p.tags = TAGS[i % 8] + ", " + TAGS[(i * 7) % 8] + ", note" + rnd.nextInt(notes);
+                p.date = "2024-0" + (1 + i % 9) + "-1" + (i % 9);
+                photos.add(p);
+            }
+            PhotoColumns c = new PhotoColumns();
+            c.append(photos);
+            System.out.println(n + " photos, " + c.byTag.size() + " distinct tags");
+            for (String q : QUERIES) run(c, q);
+        }
+    }
+
+    private static void run(PhotoColumns c, String q) {
+        int n = c.size;
+        long seq = Long.MAX_VALUE, par = Long.MAX_VALUE, indexed = Long.MAX_VALUE;
+        BitSet hits = null;
+        for (int r = 0; r < RUNS; r++) {
+            long t0 = System.nanoTime();
+            BitSet a = new BitSet(n);
+            for (int i = 0; i < n; i++) if (c.keys[i].contains(q)) a.set(i);
+            long t1 = System.nanoTime();
+            BitSet b = ForkJoinPool.commonPool().invoke(new Leaves(c, q, 0, n));
+            long t2 = System.nanoTime();
+            BitSet t = c.text(q);
+            long t3 = System.nanoTime();
+            if (!a.equals(b) || !a.equals(t) || !a.equals(c.scan(q))) throw new AssertionError("hits differ at " + n);
+            seq = Math.min(seq, t1 - t0);
+            par = Math.min(par, t2 - t1);
+            indexed = Math.min(indexed, t3 - t2);
+            hits = a;
+        }
+        System.out.printf("  \"%s\" (%d hits): sequential scan %.2f ms, fork-join scan %.2f ms, text() %.2f ms%n",
+                q, hits.cardinality(), seq / 1e6, par / 1e6, indexed / 1e6);
+    }
+
+    // PhotoColumns' ForkJoin split without its parallelism check, so one-core machines still measure it
+    private static final class Leaves extends RecursiveTask<BitSet> {
+        private final PhotoColumns c;
+        private final String q;
+        private final int from, to;
+
+        Leaves(PhotoColumns c, String q, int from, int to) {
+            this.c = c;
+            this.q = q;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override protected BitSet compute() {
+            if (to - from <= LEAF) {
+                BitSet out = new BitSet(to);
+                for (int i = from; i < to; i++) if (c.keys[i].contains(q)) out.set(i);
+                return out;
+            }
+            int mid = (from + to) >>> 1;
+            Leaves right = new Leaves(c, q, mid, to);
+            right.fork();
+            BitSet out = new Leaves(c, q, from, mid).compute();
+            out.or(right.join());
+            return out;
+        }
+    }
+}
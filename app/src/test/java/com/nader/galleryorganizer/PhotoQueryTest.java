@@ -0,0 +1,50 @@
+package com.nader.galleryorganizer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Smart album matching of single PhotoStore records (PhotoQuery.matches).
+ */
+public class PhotoQueryTest {
+    private static final int TODAY = 20240315;
+    private static final String URI = "content://media/external/images/media/42";
+
+    // what MediaLibrary.names answers for a row in Pictures/GalleryOrganizer/Receipts/
+    private static final PhotoQuery.MediaNames MEDIA = uri ->
+            uri.equals(URI) ? new String[]{"IMG_0042.jpg", "Receipts"} : null;
+
+    private static PhotoRecord record(String path) {
+        return new PhotoRecord(path, "invoice", "2024-03-09", 0, false);
+    }
+
+    @Test
+    public void folder_matchesContentUriThroughMediaNames() {
+        assertTrue(PhotoQuery.parse("folder:Receipts").matches(record(URI), TODAY, MEDIA));
+        assertTrue(PhotoQuery.parse("folder:receipts tag:invoice").matches(record(URI), TODAY, MEDIA));
+        assertFalse(PhotoQuery.parse("folder:Trips").matches(record(URI), TODAY, MEDIA));
+    }
+
+    @Test
+    public void text_matchesContentUriDisplayName() {
+        assertTrue(PhotoQuery.parse("img_0042").matches(record(URI), TODAY, MEDIA));
+        assertTrue(PhotoQuery.parse("receipts").matches(record(URI), TODAY, MEDIA));
+    }
+
+    @Test
+    public void unknownContentUri_hasNoNameOrFolder() {
+        String other = "content://media/external/images/media/7";
+        assertFalse(PhotoQuery.parse("folder:Receipts").matches(record(other), TODAY, MEDIA));
+        assertFalse(PhotoQuery.parse("folder:Receipts").matches(record(URI), TODAY, null));
+        assertTrue(PhotoQuery.parse("tag:invoice").matches(record(other), TODAY, MEDIA));
+    }
+
+    @Test
+    public void filePath_usesParentFolderAndFileName() {
+        PhotoRecord r = record("/storage/emulated/0/Pictures/GalleryOrganizer/Receipts/scan.jpg");
+        assertTrue(PhotoQuery.parse("folder:Receipts").matches(r, TODAY, null));
+        assertTrue(PhotoQuery.parse("scan").matches(r, TODAY, null));
+        assertFalse(PhotoQuery.parse("folder:GalleryOrganizer").matches(r, TODAY, null));
+    }
+}
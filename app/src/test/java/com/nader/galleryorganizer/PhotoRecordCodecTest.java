@@ -0,0 +1,60 @@
+package com.nader.galleryorganizer;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Journal encoding round trips (PhotoRecordCodec).
+ */
+public class PhotoRecordCodecTest {
+
+    private static byte[] write(String... paths) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PhotoRecordCodec.Writer writer = new PhotoRecordCodec.Writer(bytes);
+        writer.writeHeader();
+        for (String p : paths) writer.put(new PhotoRecord(p, "party,🎈", "2024-03-09", 7, true));
+        writer.flush();
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void paths_sharingHighSurrogate_roundTrip() throws IOException {
+        String[] paths = {
+                "/sdcard/Pictures/🎉/a.jpg",
+                "/sdcard/Pictures/🎂/b.jpg",
+                "/sdcard/Pictures/🎂/c.jpg",
+                "/sdcard/Pictures/plain.jpg",
+                "/sdcard/Pictures/📷.jpg",
+        };
+        PhotoRecordCodec.Reader reader = new PhotoRecordCodec.Reader(new ByteArrayInputStream(write(paths)));
+        assertTrue(reader.readHeader());
+        for (String p : paths) {
+            assertEquals(PhotoRecordCodec.PUT, reader.next());
+            assertEquals(p, reader.record.path);
+            assertEquals("party,🎈", reader.record.tags);
+            assertEquals("2024-03-09", reader.record.date);
+            assertTrue(reader.record.favorite);
+        }
+        assertEquals(-1, reader.next());
+    }
+
+    @Test
+    public void delete_afterNonBmpPath_roundTrips() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PhotoRecordCodec.Writer writer = new PhotoRecordCodec.Writer(bytes);
+        writer.writeHeader();
+        writer.put(new PhotoRecord("/sdcard/🎉x.jpg", "", "", 0, false));
+        writer.delete("/sdcard/🎊y.jpg");
+        writer.flush();
+        PhotoRecordCodec.Reader reader = new PhotoRecordCodec.Reader(new ByteArrayInputStream(bytes.toByteArray()));
+        assertTrue(reader.readHeader());
+        assertEquals(PhotoRecordCodec.PUT, reader.next());
+        assertEquals(PhotoRecordCodec.DELETE, reader.next());
+        assertEquals("/sdcard/🎊y.jpg", reader.path);
+    }
+}